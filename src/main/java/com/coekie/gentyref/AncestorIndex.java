@@ -0,0 +1,117 @@
+package com.coekie.gentyref;
+
+import java.lang.reflect.Type;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Index of the superclasses and superinterfaces (direct or indirect) of a class. For each of those
+ * ancestors, it contains the type representing that ancestor with its type arguments expressed in
+ * terms of the type variables of the indexed class. For example for <tt>ArrayList</tt> it maps
+ * <tt>Collection</tt> to <tt>Collection&lt;E&gt;</tt>, where <tt>E</tt> is the type variable of
+ * <tt>ArrayList</tt>.
+ *
+ * <p>Ancestors are added to the index lazily, the first time they are looked up. The path to an
+ * ancestor is found using only erased classes, and type arguments are only substituted along that
+ * path, using the indexes of the classes on it. Other branches of the hierarchy are never mapped.
+ */
+class AncestorIndex {
+  private static final ClassValue<AncestorIndex> INDEXES =
+      new ClassValue<AncestorIndex>() {
+        @Override
+        protected AncestorIndex computeValue(Class<?> clazz) {
+          return clazz.isArray() ? UNAVAILABLE : new AncestorIndex(clazz);
+        }
+      };
+
+  /** Marker for classes that we don't index, see {@link #get(Class)}. */
+  private static final AncestorIndex UNAVAILABLE = new AncestorIndex(Object.class);
+
+  private final Class<?> clazz;
+
+  private final ConcurrentMap<Class<?>, Type> ancestors = new ConcurrentHashMap<Class<?>, Type>();
+
+  /**
+   * The ancestors as seen from the raw type of this class, or null if this class is not generic.
+   * These are erased only one level deep: the direct supertypes of a raw type are erased, but if
+   * those are not generic then their own supertypes are not.
+   */
+  private final ConcurrentMap<Class<?>, Type> rawAncestors;
+
+  private AncestorIndex(Class<?> clazz) {
+    this.clazz = clazz;
+    this.rawAncestors =
+        GenericTypeReflector.isMissingTypeParameters(clazz)
+            ? new ConcurrentHashMap<Class<?>, Type>()
+            : null;
+  }
+
+  /** Returns the index for the given class, or null if there is none. There is none for arrays. */
+  static AncestorIndex get(Class<?> clazz) {
+    AncestorIndex index = INDEXES.get(clazz);
+    return index == UNAVAILABLE ? null : index;
+  }
+
+  /**
+   * Returns the supertype of <tt>type</tt> whose erasure is <tt>ancestor</tt>. <tt>type</tt> must
+   * be the indexed class, or a parameterized type of it; and <tt>ancestor</tt> must be a proper
+   * superclass or superinterface of the indexed class.
+   *
+   * @see GenericTypeReflector#getExactSuperType(Type, Class)
+   */
+  Type getExactSuperType(Type type, Class<?> ancestor) {
+    if (rawAncestors != null && type instanceof Class) {
+      return getAncestor(rawAncestors, ancestor, true);
+    }
+    return GenericTypeReflector.mapTypeParameters(getAncestor(ancestors, ancestor, false), type);
+  }
+
+  /**
+   * Returns the VarMap for the type parameters of <tt>ancestor</tt> in <tt>type</tt>; the same as
+   * the one returned by {@link GenericTypeReflector#getTypeParameterMap(Type)} for the result of
+   * {@link #getExactSuperType(Type, Class)}, but without creating that type. Returns null if that
+   * type is a raw type.
+   */
+  VarMap getTypeParameterMap(Type type, Class<?> ancestor) {
+    if (rawAncestors != null && type instanceof Class) {
+      return GenericTypeReflector.getTypeParameterMap(getAncestor(rawAncestors, ancestor, true));
+    }
+    VarMap ancestorMap =
+        GenericTypeReflector.getTypeParameterMap(getAncestor(ancestors, ancestor, false));
+    return ancestorMap == null
+        ? null
+        : ancestorMap.andThen(GenericTypeReflector.getTypeParameterMap(type));
+  }
+
+  private Type getAncestor(ConcurrentMap<Class<?>, Type> map, Class<?> ancestor, boolean raw) {
+    Type result = map.get(ancestor);
+    if (result == null) {
+      result = findAncestor(ancestor, raw);
+      map.putIfAbsent(ancestor, result);
+    }
+    return result;
+  }
+
+  /**
+   * Finds the type of <tt>ancestor</tt> as seen from this class, or from its raw type if
+   * <tt>raw</tt> is true.
+   *
+   * <p>This takes the first direct supertype that <tt>ancestor</tt> is assignable from. That is the
+   * same one a depth-first search through the hierarchy would find it in first. For hierarchies
+   * accepted by the compiler all paths lead to the same result anyway, but this way we also give
+   * the same result as such a search for inconsistent ones (e.g. after separate compilation).
+   */
+  private Type findAncestor(Class<?> ancestor, boolean raw) {
+    for (Type directSuperType : GenericTypeReflector.getDeclaredDirectSuperTypes(clazz)) {
+      Class<?> directSuperClass = GenericTypeReflector.erase(directSuperType);
+      Type seenDirectSuperType = raw ? directSuperClass : directSuperType;
+      if (directSuperClass == ancestor) {
+        return seenDirectSuperType;
+      }
+      if (ancestor.isAssignableFrom(directSuperClass)) {
+        return INDEXES.get(directSuperClass).getExactSuperType(seenDirectSuperType, ancestor);
+      }
+    }
+    throw new IllegalArgumentException(ancestor + " is not a supertype of " + clazz);
+  }
+}
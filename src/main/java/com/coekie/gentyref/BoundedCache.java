@@ -0,0 +1,83 @@
+package com.coekie.gentyref;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe cache with a maximum number of entries. Reads do not lock. When the cache is full,
+ * the entries that were added first are evicted first.
+ *
+ * <p>The cache only counts hits and misses when told to with {@link #recordHit()} and {@link
+ * #recordMiss()}, so that users can decide what counts as a hit.
+ */
+class BoundedCache<K, V> {
+  private final int maxSize;
+  private final ConcurrentHashMap<K, V> map;
+  /** Keys in the order they were added, for eviction */
+  private final Queue<K> insertionOrder = new ConcurrentLinkedQueue<K>();
+
+  private final AtomicInteger size = new AtomicInteger();
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+  private final AtomicLong evictionCount = new AtomicLong();
+
+  /** Creates a cache holding at most <tt>maxSize</tt> entries. */
+  BoundedCache(int maxSize) {
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("maxSize must be positive, but was " + maxSize);
+    }
+    this.maxSize = maxSize;
+    this.map = new ConcurrentHashMap<K, V>(Math.min(maxSize, 64));
+  }
+
+  /** Returns the value for the given key, or null if it is not in the cache. */
+  V get(K key) {
+    return map.get(key);
+  }
+
+  /**
+   * Adds the given entry to the cache, unless there already was a value for that key.
+   *
+   * @return the value in the cache: the existing value if there was one, otherwise the given value
+   */
+  V putIfAbsent(K key, V value) {
+    V existing = map.putIfAbsent(key, value);
+    if (existing != null) {
+      return existing;
+    }
+    insertionOrder.add(key);
+    if (size.incrementAndGet() > maxSize) {
+      evict();
+    }
+    return value;
+  }
+
+  private void evict() {
+    while (size.get() > maxSize) {
+      K oldest = insertionOrder.poll();
+      if (oldest == null) {
+        return;
+      }
+      if (map.remove(oldest) != null) {
+        size.decrementAndGet();
+        evictionCount.incrementAndGet();
+      }
+    }
+  }
+
+  void recordHit() {
+    hitCount.incrementAndGet();
+  }
+
+  void recordMiss() {
+    missCount.incrementAndGet();
+  }
+
+  CacheStats getStats() {
+    return new CacheStats(
+        hitCount.get(), missCount.get(), evictionCount.get(), size.get(), maxSize);
+  }
+}
@@ -0,0 +1,65 @@
+package com.coekie.gentyref;
+
+/**
+ * Snapshot of the statistics of one of the caches in gentyref.
+ *
+ * @see GenericTypeReflector#getExactSuperTypeCacheStats()
+ */
+public final class CacheStats {
+  /** Statistics of a cache that is disabled */
+  static final CacheStats DISABLED = new CacheStats(0, 0, 0, 0, 0);
+
+  private final long hitCount;
+  private final long missCount;
+  private final long evictionCount;
+  private final int size;
+  private final int maxSize;
+
+  CacheStats(long hitCount, long missCount, long evictionCount, int size, int maxSize) {
+    this.hitCount = hitCount;
+    this.missCount = missCount;
+    this.evictionCount = evictionCount;
+    this.size = size;
+    this.maxSize = maxSize;
+  }
+
+  /** Returns the number of lookups that were answered from the cache. */
+  public long getHitCount() {
+    return hitCount;
+  }
+
+  /** Returns the number of lookups that were not in the cache, and had to be computed. */
+  public long getMissCount() {
+    return missCount;
+  }
+
+  /** Returns the number of entries that were removed from the cache because it was full. */
+  public long getEvictionCount() {
+    return evictionCount;
+  }
+
+  /** Returns the number of entries in the cache. */
+  public int getSize() {
+    return size;
+  }
+
+  /** Returns the maximum number of entries in the cache, or 0 if the cache is disabled. */
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  @Override
+  public String toString() {
+    return "CacheStats[hits="
+        + hitCount
+        + ", misses="
+        + missCount
+        + ", evictions="
+        + evictionCount
+        + ", size="
+        + size
+        + "/"
+        + maxSize
+        + "]";
+  }
+}
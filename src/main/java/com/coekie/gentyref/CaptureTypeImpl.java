@@ -7,42 +7,51 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+/**
+ * Implementation of {@link CaptureType}. Captures are created with {@link
+ * #captureArguments(TypeVariable[], Type[])}, and are complete and immutable by the time they are
+ * returned from there.
+ *
+ * <p>Captures are only equal to themselves: two captures of the same wildcard stand for two
+ * possibly different unknown types (see {@link GenericTypeReflector#capture(Type)}).
+ */
 class CaptureTypeImpl implements CaptureType {
   private final WildcardType wildcard;
   private final TypeVariable<?> variable;
   private final Type[] lowerBounds;
-  private Type[] upperBounds;
+  /** The captures created together with this one, that hold the upper bounds */
+  private final CaptureGroup group;
+  /** The position of this capture in the arguments of its group */
+  private final int index;
+  private volatile Class<?>[] erasedUpperBounds;
 
   /**
-   * Creates an uninitialized CaptureTypeImpl. Before using this type, {@link #init(VarMap)} must be
-   * called.
-   *
    * @param wildcard The wildcard this is a capture of
    * @param variable The type variable where the wildcard is a parameter for.
    */
-  public CaptureTypeImpl(WildcardType wildcard, TypeVariable<?> variable) {
+  private CaptureTypeImpl(
+      WildcardType wildcard, TypeVariable<?> variable, CaptureGroup group, int index) {
     this.wildcard = wildcard;
     this.variable = variable;
-    this.lowerBounds = wildcard.getLowerBounds();
+    this.lowerBounds = WildcardTypeImpl.lowerBoundsOf(wildcard);
+    this.group = group;
+    this.index = index;
   }
 
   /**
-   * Initialize this CaptureTypeImpl. This is needed for type variable bounds referring to each
-   * other: we need the capture of the argument.
+   * Applies capture conversion to the given type arguments: returns the arguments with every
+   * wildcard replaced by a new capture. Returns <tt>arguments</tt> itself if there are no
+   * wildcards.
+   *
+   * @param variables The type parameters that the arguments are the values of.
    */
-  void init(VarMap varMap) {
-    ArrayList<Type> upperBoundsList = new ArrayList<Type>();
-    upperBoundsList.addAll(Arrays.asList(varMap.map(variable.getBounds())));
-
-    List<Type> wildcardUpperBounds = Arrays.asList(wildcard.getUpperBounds());
-    if (wildcardUpperBounds.size() > 0 && wildcardUpperBounds.get(0) == Object.class) {
-      // skip the Object bound, we already have a first upper bound from 'variable'
-      upperBoundsList.addAll(wildcardUpperBounds.subList(1, wildcardUpperBounds.size()));
-    } else {
-      upperBoundsList.addAll(wildcardUpperBounds);
+  static Type[] captureArguments(TypeVariable<?>[] variables, Type[] arguments) {
+    for (Type argument : arguments) {
+      if (argument instanceof WildcardType) {
+        return new CaptureGroup(variables, arguments).capturedArguments;
+      }
     }
-    upperBounds = new Type[upperBoundsList.size()];
-    upperBoundsList.toArray(upperBounds);
+    return arguments;
   }
 
   /** @see com.coekie.gentyref.CaptureType#getLowerBounds() */
@@ -52,12 +61,99 @@ class CaptureTypeImpl implements CaptureType {
 
   /** @see com.coekie.gentyref.CaptureType#getUpperBounds() */
   public Type[] getUpperBounds() {
-    assert upperBounds != null;
-    return upperBounds.clone();
+    return group.upperBounds[index].clone();
+  }
+
+  /**
+   * Returns the upper bounds of the given capture, like {@link CaptureType#getUpperBounds()}, but
+   * without copying them if <tt>type</tt> is a CaptureTypeImpl. The returned array must not be
+   * modified.
+   */
+  static Type[] upperBoundsOf(CaptureType type) {
+    return type instanceof CaptureTypeImpl
+        ? ((CaptureTypeImpl) type).group.upperBounds[((CaptureTypeImpl) type).index]
+        : type.getUpperBounds();
+  }
+
+  /**
+   * Returns the lower bounds of the given capture, like {@link CaptureType#getLowerBounds()}, but
+   * without copying them if <tt>type</tt> is a CaptureTypeImpl. The returned array must not be
+   * modified.
+   */
+  static Type[] lowerBoundsOf(CaptureType type) {
+    return type instanceof CaptureTypeImpl
+        ? ((CaptureTypeImpl) type).lowerBounds
+        : type.getLowerBounds();
+  }
+
+  /**
+   * Returns the erased upper bounds of this capture.
+   *
+   * @see GenericTypeReflector#getErasedUpperBounds(Type)
+   */
+  Class<?>[] getErasedUpperBounds() {
+    Class<?>[] result = erasedUpperBounds;
+    if (result == null) {
+      result = GenericTypeReflector.getErasedUpperBounds(group.upperBounds[index]);
+      erasedUpperBounds = result;
+    }
+    return result;
   }
 
   @Override
   public String toString() {
     return "capture of " + wildcard;
   }
+
+  /**
+   * The captures of the wildcards in the type arguments of one parameterized type. Their upper
+   * bounds can refer to each other (and to themselves), so they can only be determined after all
+   * of them are created. That is done in the constructor, before any of them is handed out.
+   */
+  private static final class CaptureGroup {
+    private final Type[] capturedArguments;
+    /** The upper bounds of the capture at each position (null for arguments that aren't one) */
+    private final Type[][] upperBounds;
+
+    CaptureGroup(TypeVariable<?>[] variables, Type[] arguments) {
+      assert variables.length == arguments.length;
+      capturedArguments = new Type[arguments.length];
+      for (int i = 0; i < arguments.length; i++) {
+        Type argument = arguments[i];
+        capturedArguments[i] =
+            argument instanceof WildcardType
+                ? new CaptureTypeImpl((WildcardType) argument, variables[i], this, i)
+                : argument;
+      }
+
+      // the map from parameters to their captured equivalent
+      VarMap varMap = new VarMap(variables, capturedArguments);
+      Type[][] bounds = new Type[arguments.length][];
+      for (int i = 0; i < arguments.length; i++) {
+        if (capturedArguments[i] instanceof CaptureTypeImpl) {
+          bounds[i] = upperBounds(varMap, variables[i], (WildcardType) arguments[i]);
+        }
+      }
+      upperBounds = bounds;
+    }
+
+    /**
+     * Returns the upper bounds of the capture of <tt>wildcard</tt>: the bounds of the variable
+     * (with variables replaced by their captures), followed by the bounds of the wildcard.
+     */
+    private static Type[] upperBounds(
+        VarMap varMap, TypeVariable<?> variable, WildcardType wildcard) {
+      ArrayList<Type> upperBoundsList = new ArrayList<Type>();
+      upperBoundsList.addAll(Arrays.asList(varMap.map(GenericClassInfo.boundsOf(variable))));
+
+      List<Type> wildcardUpperBounds = Arrays.asList(WildcardTypeImpl.upperBoundsOf(wildcard));
+      if (wildcardUpperBounds.size() > 0 && wildcardUpperBounds.get(0) == Object.class) {
+        // skip the Object bound, we already have a first upper bound from 'variable'
+        upperBoundsList.addAll(wildcardUpperBounds.subList(1, wildcardUpperBounds.size()));
+      } else {
+        upperBoundsList.addAll(wildcardUpperBounds);
+      }
+      return upperBoundsList.toArray(new Type[upperBoundsList.size()]);
+    }
+  }
 }
@@ -5,24 +5,36 @@ import java.lang.reflect.GenericArrayType;
 import java.lang.reflect.Type;
 
 class GenericArrayTypeImpl implements GenericArrayType {
-  private Type componentType;
+  /** Array class for every component type */
+  private static final ClassValue<Class<?>> ARRAY_CLASSES =
+      new ClassValue<Class<?>>() {
+        @Override
+        protected Class<?> computeValue(Class<?> componentType) {
+          // there's no (clean) other way to create a array class, than creating an instance of it
+          return Array.newInstance(componentType, 0).getClass();
+        }
+      };
+
+  private final Type componentType;
+  private final int hashCode;
 
   static Class<?> createArrayType(Class<?> componentType) {
-    // there's no (clean) other way to create a array class, than creating an instance of it
-    return Array.newInstance(componentType, 0).getClass();
+    return ARRAY_CLASSES.get(componentType);
   }
 
   static Type createArrayType(Type componentType) {
     if (componentType instanceof Class) {
       return createArrayType((Class<?>) componentType);
     } else {
-      return new GenericArrayTypeImpl(componentType);
+      return GenericTypeReflector.intern(new GenericArrayTypeImpl(componentType));
     }
   }
 
   private GenericArrayTypeImpl(Type componentType) {
     super();
     this.componentType = componentType;
+    // same as the JDK implementation, because the types are equal to each other
+    this.hashCode = componentType.hashCode();
   }
 
   public Type getGenericComponentType() {
@@ -31,13 +43,15 @@ class GenericArrayTypeImpl implements GenericArrayType {
 
   @Override
   public boolean equals(Object obj) {
+    if (this == obj) return true;
     if (!(obj instanceof GenericArrayType)) return false;
+    if (obj instanceof GenericArrayTypeImpl && hashCode != obj.hashCode()) return false;
     return componentType.equals(((GenericArrayType) obj).getGenericComponentType());
   }
 
   @Override
   public int hashCode() {
-    return componentType.hashCode() * 7;
+    return hashCode;
   }
 
   @Override
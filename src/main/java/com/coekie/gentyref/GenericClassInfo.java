@@ -0,0 +1,177 @@
+package com.coekie.gentyref;
+
+import java.lang.reflect.GenericDeclaration;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Facts about the generic declaration of a class that never change, cached per class. Looking
+ * these up through reflection every time is expensive: {@link Class#getEnclosingClass()} in
+ * particular has to go through the enclosing method metadata, and methods like {@link
+ * Class#getTypeParameters()} return a new copy of their result on every call.
+ *
+ * <p>The arrays returned by the methods of this class are shared, and must not be modified or
+ * passed on to code outside of this library.
+ */
+class GenericClassInfo {
+  private static final ClassValue<GenericClassInfo> INFOS =
+      new ClassValue<GenericClassInfo>() {
+        @Override
+        protected GenericClassInfo computeValue(Class<?> clazz) {
+          return new GenericClassInfo(clazz);
+        }
+      };
+
+  private final TypeVariable<?>[] typeParameters;
+  private final boolean hasTypeParameters;
+  private final boolean hasGenericEnclosingClass;
+  private final boolean isStatic;
+
+  // The supertypes and bounds are only looked up when needed, because reading them can fail (e.g.
+  // with a TypeNotPresentException), and a class may be used without ever needing them.
+  private final Class<?> clazz;
+  private volatile Type[] declaredDirectSuperTypes;
+  private volatile Type[][] typeParameterBounds;
+  // computed one entry at a time, because erasing the bound of one type parameter can need the
+  // erased bound of another one (class Foo<A extends Number, B extends A>)
+  private final AtomicReferenceArray<Class<?>[]> erasedTypeParameterBounds;
+
+  private GenericClassInfo(Class<?> clazz) {
+    this.clazz = clazz;
+    this.typeParameters = clazz.getTypeParameters();
+    this.hasTypeParameters = typeParameters.length != 0;
+    this.erasedTypeParameterBounds = new AtomicReferenceArray<Class<?>[]>(typeParameters.length);
+    Class<?> enclosingClass = clazz.getEnclosingClass();
+    this.hasGenericEnclosingClass =
+        enclosingClass != null && get(enclosingClass).isMissingTypeParameters();
+    this.isStatic = Modifier.isStatic(clazz.getModifiers());
+  }
+
+  /** Returns the info for the given class. */
+  static GenericClassInfo get(Class<?> clazz) {
+    return INFOS.get(clazz);
+  }
+
+  /**
+   * Returns the bounds of the given type variable, like {@link TypeVariable#getBounds()}. The
+   * returned array must not be modified.
+   */
+  static Type[] boundsOf(TypeVariable<?> variable) {
+    GenericDeclaration declaration = variable.getGenericDeclaration();
+    if (declaration instanceof Class) {
+      GenericClassInfo info = get((Class<?>) declaration);
+      int index = info.indexOf(variable);
+      if (index != -1) {
+        return info.getTypeParameterBounds()[index];
+      }
+    }
+    return variable.getBounds();
+  }
+
+  /**
+   * Returns the erased upper bounds of the given type variable.
+   *
+   * @see GenericTypeReflector#getErasedUpperBounds(Type)
+   */
+  static Class<?>[] erasedBoundsOf(TypeVariable<?> variable) {
+    GenericDeclaration declaration = variable.getGenericDeclaration();
+    if (declaration instanceof Class) {
+      GenericClassInfo info = get((Class<?>) declaration);
+      int index = info.indexOf(variable);
+      if (index != -1) {
+        return info.getErasedTypeParameterBounds(index);
+      }
+    }
+    return GenericTypeReflector.getErasedUpperBounds(variable.getBounds());
+  }
+
+  /** Returns the position of the given type variable in the type parameters, or -1 */
+  private int indexOf(TypeVariable<?> variable) {
+    String name = variable.getName();
+    for (int i = 0; i < typeParameters.length; i++) {
+      if (typeParameters[i].getName().equals(name)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /** Returns the type parameters of the class, like {@link Class#getTypeParameters()}. */
+  TypeVariable<?>[] getTypeParameters() {
+    return typeParameters;
+  }
+
+  /** Returns the bounds of each of the type parameters of the class. */
+  Type[][] getTypeParameterBounds() {
+    Type[][] result = typeParameterBounds;
+    if (result == null) {
+      result = new Type[typeParameters.length][];
+      for (int i = 0; i < typeParameters.length; i++) {
+        result[i] = typeParameters[i].getBounds();
+      }
+      typeParameterBounds = result;
+    }
+    return result;
+  }
+
+  /** Returns the erased upper bounds of the type parameter at the given position. */
+  Class<?>[] getErasedTypeParameterBounds(int index) {
+    Class<?>[] result = erasedTypeParameterBounds.get(index);
+    if (result == null) {
+      result = GenericTypeReflector.getErasedUpperBounds(getTypeParameterBounds()[index]);
+      erasedTypeParameterBounds.set(index, result);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the direct supertypes of the (non-array) class, as declared on the class: in terms of
+   * its own type variables. The superclass comes first, followed by the interfaces. The only
+   * supertype of an interface without superinterfaces is Object.
+   */
+  Type[] getDeclaredDirectSuperTypes() {
+    Type[] result = declaredDirectSuperTypes;
+    if (result == null) {
+      Type[] superInterfaces = clazz.getGenericInterfaces();
+      Type superClass = clazz.getGenericSuperclass();
+      if (superClass == null && superInterfaces.length == 0 && clazz.isInterface()) {
+        result = new Type[] {Object.class};
+      } else if (superClass == null) {
+        result = superInterfaces;
+      } else {
+        result = new Type[superInterfaces.length + 1];
+        result[0] = superClass;
+        System.arraycopy(superInterfaces, 0, result, 1, superInterfaces.length);
+      }
+      declaredDirectSuperTypes = result;
+    }
+    return result;
+  }
+
+  /** Returns true if the class itself declares type parameters. */
+  boolean hasTypeParameters() {
+    return hasTypeParameters;
+  }
+
+  /** Returns true if one of the (direct or indirect) enclosing classes declares type parameters. */
+  boolean hasGenericEnclosingClass() {
+    return hasGenericEnclosingClass;
+  }
+
+  /** Returns true if the class is a static nested class. */
+  boolean isStatic() {
+    return isStatic;
+  }
+
+  /**
+   * Returns true if the class, or one of its enclosing classes, declares type parameters; in other
+   * words if the class used as a type is a raw type.
+   *
+   * @see GenericTypeReflector#isMissingTypeParameters(java.lang.reflect.Type)
+   */
+  boolean isMissingTypeParameters() {
+    return hasTypeParameters || hasGenericEnclosingClass;
+  }
+}
@@ -3,16 +3,21 @@ package com.coekie.gentyref;
 import java.io.Serializable;
 import java.lang.reflect.Field;
 import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Member;
 import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.lang.reflect.TypeVariable;
 import java.lang.reflect.WildcardType;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Utility class for doing reflection on types.
@@ -20,8 +25,24 @@ import java.util.Set;
  * @author Wouter Coekaerts <wouter@coekaerts.be>
  */
 public class GenericTypeReflector {
-  private static final Type UNBOUND_WILDCARD =
-      new WildcardTypeImpl(new Type[] {Object.class}, new Type[] {});
+  /** Marker in exactSuperTypeCache for a class that is not a supertype */
+  private static final Type NO_SUPER_TYPE = new Type() {};
+
+  /**
+   * Cache for {@link #getExactSuperType(Type, Class)}: for every type, a map from searchClass to
+   * the result. Null if the cache is disabled, which is the default.
+   */
+  private static volatile BoundedCache<Type, ConcurrentMap<Class<?>, Type>> exactSuperTypeCache =
+      null;
+
+  /**
+   * Cache for {@link #isSuperType(Type, Type)} and {@link #contains(Type, Type)}. Null if the cache
+   * is disabled, which is the default.
+   */
+  private static volatile BoundedCache<SuperTypeCheck, Boolean> superTypeCheckCache = null;
+
+  private static final WeakInterner<Type> TYPE_INTERNER = new WeakInterner<Type>();
+  private static volatile boolean interningEnabled = false;
 
   /** Returns the erasure of the given type. */
   public static Class<?> erase(Type type) {
@@ -31,8 +52,9 @@ public class GenericTypeReflector {
       return (Class<?>) ((ParameterizedType) type).getRawType();
     } else if (type instanceof TypeVariable) {
       TypeVariable<?> tv = (TypeVariable<?>) type;
-      if (tv.getBounds().length == 0) return Object.class;
-      else return erase(tv.getBounds()[0]);
+      Type[] bounds = GenericClassInfo.boundsOf(tv);
+      if (bounds.length == 0) return Object.class;
+      else return erase(bounds[0]);
     } else if (type instanceof GenericArrayType) {
       GenericArrayType aType = (GenericArrayType) type;
       return GenericArrayTypeImpl.createArrayType(erase(aType.getGenericComponentType()));
@@ -50,19 +72,26 @@ public class GenericTypeReflector {
    *     or it's a raw type) Class
    * @return toMapType, but with type parameters from typeAndParams replaced.
    */
-  private static Type mapTypeParameters(Type toMapType, Type typeAndParams) {
+  static Type mapTypeParameters(Type toMapType, Type typeAndParams) {
+    VarMap varMap = getTypeParameterMap(typeAndParams);
+    return varMap == null ? erase(toMapType) : varMap.map(toMapType);
+  }
+
+  /**
+   * Returns a VarMap mapping the type parameters of typeAndParams (and of its owner types) to their
+   * values in typeAndParams. Returns null if typeAndParams is a raw type: then there are no values,
+   * and types containing those type parameters must be erased instead.
+   *
+   * @param typeAndParams must be either ParameterizedType, or (in case there are no type arguments,
+   *     or it's a raw type) Class
+   */
+  static VarMap getTypeParameterMap(Type typeAndParams) {
     if (isMissingTypeParameters(typeAndParams)) {
-      return erase(toMapType);
+      return null;
+    } else if (typeAndParams instanceof ParameterizedType) {
+      return new VarMap((ParameterizedType) typeAndParams);
     } else {
-      VarMap varMap = new VarMap();
-      Type handlingTypeAndParams = typeAndParams;
-      while (handlingTypeAndParams instanceof ParameterizedType) {
-        ParameterizedType pType = (ParameterizedType) handlingTypeAndParams;
-        Class<?> clazz = (Class<?>) pType.getRawType(); // getRawType should always be Class
-        varMap.addAll(clazz.getTypeParameters(), pType.getActualTypeArguments());
-        handlingTypeAndParams = pType.getOwnerType();
-      }
-      return varMap.map(toMapType);
+      return VarMap.EMPTY;
     }
   }
 
@@ -72,10 +101,7 @@ public class GenericTypeReflector {
    */
   static boolean isMissingTypeParameters(Type type) {
     if (type instanceof Class) {
-      for (Class<?> clazz = (Class<?>) type; clazz != null; clazz = clazz.getEnclosingClass()) {
-        if (clazz.getTypeParameters().length != 0) return true;
-      }
-      return false;
+      return GenericClassInfo.get((Class<?>) type).isMissingTypeParameters();
     } else if (type instanceof ParameterizedType) {
       return false;
     } else {
@@ -101,14 +127,13 @@ public class GenericTypeReflector {
     if (clazz.isArray()) {
       return GenericArrayTypeImpl.createArrayType(addWildcardParameters(clazz.getComponentType()));
     } else if (isMissingTypeParameters(clazz)) {
-      TypeVariable<?>[] vars = clazz.getTypeParameters();
-      Type[] arguments = new Type[vars.length];
-      Arrays.fill(arguments, UNBOUND_WILDCARD);
+      Type[] arguments = new Type[GenericClassInfo.get(clazz).getTypeParameters().length];
+      Arrays.fill(arguments, WildcardTypeImpl.UNBOUND);
       Type owner =
           clazz.getDeclaringClass() == null
               ? null
               : addWildcardParameters(clazz.getDeclaringClass());
-      return new ParameterizedTypeImpl(clazz, arguments, owner);
+      return ParameterizedTypeImpl.createParameterizedType(clazz, arguments, owner);
     } else {
       return clazz;
     }
@@ -134,21 +159,241 @@ public class GenericTypeReflector {
    * ParameterizedType} representing <tt>Collection&lt;String&gt;</tt>.
    */
   public static Type getExactSuperType(Type type, Class<?> searchClass) {
-    if (type instanceof ParameterizedType
-        || type instanceof Class
-        || type instanceof GenericArrayType) {
-      Class<?> clazz = erase(type);
+    BoundedCache<Type, ConcurrentMap<Class<?>, Type>> cache = exactSuperTypeCache;
+    if (cache == null || !isExactSuperTypeCacheable(type)) {
+      return findExactSuperType(type, searchClass);
+    }
 
-      if (searchClass == clazz) {
-        return type;
+    ConcurrentMap<Class<?>, Type> superTypes = cache.get(type);
+    if (superTypes == null) {
+      superTypes = cache.putIfAbsent(type, new ConcurrentHashMap<Class<?>, Type>(4));
+    }
+    Type result = superTypes.get(searchClass);
+    if (result != null) {
+      cache.recordHit();
+    } else {
+      cache.recordMiss();
+      result = findExactSuperType(type, searchClass);
+      Type existing = superTypes.putIfAbsent(searchClass, result == null ? NO_SUPER_TYPE : result);
+      if (existing != null) {
+        result = existing;
       }
+    }
+    return result == NO_SUPER_TYPE ? null : result;
+  }
 
-      if (!searchClass.isAssignableFrom(clazz)) return null;
+  /**
+   * Checks if the result of getExactSuperType for the given type should be cached. That is the case
+   * for parameterized types and generic arrays, for which finding supertypes involves substituting
+   * type arguments. (For classes the result comes straight from the AncestorIndex.) Types
+   * containing a capture anywhere are skipped, because the same capture hardly ever comes back.
+   */
+  private static boolean isExactSuperTypeCacheable(Type type) {
+    return (type instanceof ParameterizedType || type instanceof GenericArrayType)
+        && !containsCapture(type);
+  }
+
+  /**
+   * Checks if the given type contains a {@link CaptureType}, in its type arguments, owner types,
+   * wildcard bounds or array component types. The bounds of type variables are not searched.
+   */
+  private static boolean containsCapture(Type type) {
+    if (type instanceof Class || type instanceof TypeVariable) {
+      return false;
+    } else if (type instanceof ParameterizedType) {
+      ParameterizedType pType = (ParameterizedType) type;
+      return containsCapture(ParameterizedTypeImpl.argumentsOf(pType))
+          || (pType.getOwnerType() != null && containsCapture(pType.getOwnerType()));
+    } else if (type instanceof WildcardType) {
+      WildcardType wType = (WildcardType) type;
+      return containsCapture(WildcardTypeImpl.upperBoundsOf(wType))
+          || containsCapture(WildcardTypeImpl.lowerBoundsOf(wType));
+    } else if (type instanceof GenericArrayType) {
+      return containsCapture(((GenericArrayType) type).getGenericComponentType());
+    } else {
+      return type instanceof CaptureType;
     }
+  }
 
-    for (Type superType : getExactDirectSuperTypes(type)) {
-      Type result = getExactSuperType(superType, searchClass);
-      if (result != null) return result;
+  private static boolean containsCapture(Type[] types) {
+    for (Type type : types) {
+      if (containsCapture(type)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Sets the maximum number of types for which results of {@link #getExactSuperType(Type, Class)}
+   * are cached. Results are only cached for {@link ParameterizedType}s and {@link
+   * GenericArrayType}s that don't contain a {@link CaptureType}. When the cache is full, the types
+   * that were added first are evicted first.
+   *
+   * <p>The cache is disabled (size 0) by default, because it holds strong references to the
+   * cached types, and so to their classes and class loaders. Setting the size clears the cache.
+   */
+  public static void setExactSuperTypeCacheSize(int maxSize) {
+    if (maxSize < 0) {
+      throw new IllegalArgumentException("maxSize must not be negative, but was " + maxSize);
+    }
+    exactSuperTypeCache =
+        maxSize == 0 ? null : new BoundedCache<Type, ConcurrentMap<Class<?>, Type>>(maxSize);
+  }
+
+  /**
+   * Returns the statistics of the cache of {@link #getExactSuperType(Type, Class)}.
+   *
+   * @see #setExactSuperTypeCacheSize(int)
+   */
+  public static CacheStats getExactSuperTypeCacheStats() {
+    BoundedCache<Type, ConcurrentMap<Class<?>, Type>> cache = exactSuperTypeCache;
+    return cache == null ? CacheStats.DISABLED : cache.getStats();
+  }
+
+  /**
+   * Enables or disables interning of the types created by gentyref. When enabled, the {@link
+   * ParameterizedType}s, {@link WildcardType}s and {@link GenericArrayType}s returned by
+   * gentyref (including those created by {@link TypeFactory}) are canonical instances: equal types
+   * are the same instance. Canonical instances are only held weakly. Interning is disabled by
+   * default.
+   *
+   * <p>Note that this only applies to types created by gentyref; the types returned by the JDK
+   * reflection API itself are never interned.
+   */
+  public static void setInterningEnabled(boolean enabled) {
+    interningEnabled = enabled;
+  }
+
+  /**
+   * Returns the canonical instance of the given type, if interning is enabled. Otherwise, just
+   * returns the given type.
+   */
+  @SuppressWarnings("unchecked")
+  static <T extends Type> T intern(T type) {
+    return interningEnabled ? (T) TYPE_INTERNER.intern(type) : type;
+  }
+
+  /**
+   * Returns the erasures of the upper bounds of the given type: the classes that are supertypes of
+   * <tt>type</tt>, and that every other supertype is a supertype of. For a class or parameterized
+   * type that is just its erasure. For type variables, wildcards and captures it consists of the
+   * erasures of their upper bounds, where bounds that are type variables (or captures) themselves
+   * are replaced by their own erased upper bounds. These are cached for the type parameters of
+   * classes and for captures.
+   *
+   * <p>A class is a supertype of <tt>type</tt> if and only if it is assignable from one of these.
+   * The returned array must not be modified.
+   */
+  static Class<?>[] getErasedUpperBounds(Type type) {
+    if (type instanceof Class || type instanceof ParameterizedType) {
+      return new Class<?>[] {erase(type)};
+    } else if (type instanceof TypeVariable) {
+      return GenericClassInfo.erasedBoundsOf((TypeVariable<?>) type);
+    } else if (type instanceof WildcardType) {
+      return getErasedUpperBounds(WildcardTypeImpl.upperBoundsOf((WildcardType) type));
+    } else if (type instanceof CaptureTypeImpl) {
+      return ((CaptureTypeImpl) type).getErasedUpperBounds();
+    } else if (type instanceof CaptureType) {
+      return getErasedUpperBounds(((CaptureType) type).getUpperBounds());
+    } else if (type instanceof GenericArrayType) {
+      // T[] is a subtype of A[] and B[] if T extends A & B
+      Class<?>[] componentBounds =
+          getErasedUpperBounds(((GenericArrayType) type).getGenericComponentType());
+      Class<?>[] result = new Class<?>[componentBounds.length];
+      for (int i = 0; i < componentBounds.length; i++) {
+        result[i] = GenericArrayTypeImpl.createArrayType(componentBounds[i]);
+      }
+      return result;
+    } else if (type == null) {
+      throw new NullPointerException();
+    } else {
+      throw new RuntimeException("not implemented type: " + type);
+    }
+  }
+
+  /** Returns the erasures of the upper bounds of all the given types. */
+  static Class<?>[] getErasedUpperBounds(Type[] types) {
+    if (types.length == 1) {
+      return getErasedUpperBounds(types[0]);
+    }
+    Set<Class<?>> result = new LinkedHashSet<Class<?>>();
+    for (Type type : types) {
+      result.addAll(Arrays.asList(getErasedUpperBounds(type)));
+    }
+    return result.toArray(new Class<?>[result.size()]);
+  }
+
+  /**
+   * Checks if <tt>searchClass</tt> is assignable from the erasure of <tt>type</tt> or, for types
+   * that don't have a single erasure, from one of its erased upper bounds. If this returns false,
+   * then searchClass is not a supertype of type; this is much cheaper to determine than the exact
+   * supertype.
+   */
+  private static boolean isErasedSuperType(Class<?> searchClass, Type type) {
+    if (type instanceof Class || type instanceof ParameterizedType) {
+      return searchClass.isAssignableFrom(erase(type));
+    }
+    for (Class<?> bound : getErasedUpperBounds(type)) {
+      if (searchClass.isAssignableFrom(bound)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Implementation of getExactSuperType, without caching. Searches the hierarchy depth-first, in
+   * the order of the direct supertypes, and returns the first match.
+   *
+   * <p>Classes (including array classes) are only searched once: whether <tt>searchClass</tt> can
+   * be reached from a class only depends on its erasure, so if it's visited again through another
+   * path (an interface implemented twice in a diamond-shaped hierarchy) we already know it won't be
+   * found there.
+   */
+  private static Type findExactSuperType(Type type, Class<?> searchClass) {
+    // classes and parameterized types are checked the same way below
+    if (!(type instanceof Class || type instanceof ParameterizedType)
+        && !isErasedSuperType(searchClass, type)) {
+      return null;
+    }
+
+    ArrayDeque<Type> toVisit = new ArrayDeque<Type>();
+    Set<Class<?>> visited = null; // created when needed, most searches end at the first class
+    toVisit.push(type);
+    while (!toVisit.isEmpty()) {
+      Type current = toVisit.pop();
+      if (current instanceof ParameterizedType
+          || current instanceof Class
+          || current instanceof GenericArrayType) {
+        Class<?> clazz = erase(current);
+
+        if (searchClass == clazz) {
+          return current;
+        }
+
+        if (!searchClass.isAssignableFrom(clazz)) continue;
+
+        AncestorIndex index = AncestorIndex.get(clazz);
+        if (index != null) {
+          return index.getExactSuperType(current, searchClass);
+        }
+
+        // a generic array like T[] has the same erasure as the array of its bound, but different
+        // direct supertypes, so only classes are marked as visited
+        if (!(current instanceof GenericArrayType)) {
+          if (visited == null) {
+            visited = new HashSet<Class<?>>();
+          }
+          if (!visited.add(clazz)) continue;
+        }
+      }
+
+      // push in reverse order, so that the first direct supertype is searched first
+      Type[] superTypes = getExactDirectSuperTypes(current);
+      for (int i = superTypes.length - 1; i >= 0; i--) {
+        toVisit.push(superTypes[i]);
+      }
     }
 
     return null;
@@ -169,8 +414,9 @@ public class GenericTypeReflector {
     Class<?> clazz = variable.getGenericDeclaration();
     Type superType = getExactSuperType(type, clazz);
     if (superType instanceof ParameterizedType) {
-      int index = Arrays.asList(clazz.getTypeParameters()).indexOf(variable);
-      return ((ParameterizedType) superType).getActualTypeArguments()[index];
+      int index =
+          Arrays.asList(GenericClassInfo.get(clazz).getTypeParameters()).indexOf(variable);
+      return ParameterizedTypeImpl.argumentsOf((ParameterizedType) superType)[index];
     } else {
       return null;
     }
@@ -178,10 +424,122 @@ public class GenericTypeReflector {
 
   /** Checks if the capture of subType is a subtype of superType */
   public static boolean isSuperType(Type superType, Type subType) {
+    if ((subType instanceof Class || subType instanceof ParameterizedType)
+        && isErasedCheckSufficient(superType)) {
+      // the type arguments of subType don't matter, so there's no need to capture it
+      return erase(superType).isAssignableFrom(erase(subType));
+    }
+    return cachedCheck(superType, subType, false);
+  }
+
+  /**
+   * Checks if it is enough to compare erasures to determine if a class or parameterized type is a
+   * subtype of <tt>superType</tt>. That is the case if superType is a class (possibly a raw type or
+   * an array), or a parameterized type whose type arguments are all unbound wildcards, such as
+   * <tt>List&lt;?&gt;</tt>: every type argument is contained in those.
+   */
+  private static boolean isErasedCheckSufficient(Type superType) {
+    Type handlingType = superType;
+    while (handlingType instanceof ParameterizedType) {
+      ParameterizedType pType = (ParameterizedType) handlingType;
+      for (Type argument : ParameterizedTypeImpl.argumentsOf(pType)) {
+        if (!isUnboundWildcard(argument)) {
+          return false;
+        }
+      }
+      handlingType = pType.getOwnerType();
+    }
+    return handlingType == null || handlingType instanceof Class;
+  }
+
+  /** Checks if the given type is the wildcard "?", or the equivalent "? extends Object" */
+  private static boolean isUnboundWildcard(Type type) {
+    if (type == WildcardTypeImpl.UNBOUND) {
+      return true;
+    } else if (type instanceof WildcardType) {
+      WildcardType wildcard = (WildcardType) type;
+      Type[] upperBounds = WildcardTypeImpl.upperBoundsOf(wildcard);
+      return WildcardTypeImpl.lowerBoundsOf(wildcard).length == 0
+          && upperBounds.length == 1
+          && upperBounds[0] == Object.class;
+    } else {
+      return false;
+    }
+  }
+
+  /**
+   * Sets the maximum number of results of {@link #isSuperType(Type, Type)} that are cached. This
+   * includes the results of the checks done for type arguments while checking if a parameterized
+   * type is a supertype of another one. Checks involving a {@link CaptureType} are not cached.
+   * When the cache is full, the results that were added first are evicted first.
+   *
+   * <p>The cache is disabled (size 0) by default. Setting the size clears the cache.
+   */
+  public static void setSuperTypeCheckCacheSize(int maxSize) {
+    if (maxSize < 0) {
+      throw new IllegalArgumentException("maxSize must not be negative, but was " + maxSize);
+    }
+    superTypeCheckCache = maxSize == 0 ? null : new BoundedCache<SuperTypeCheck, Boolean>(maxSize);
+  }
+
+  /**
+   * Returns the result of isSuperType (or contains if <tt>contains</tt> is true) for the given
+   * types, from the cache if possible.
+   */
+  private static boolean cachedCheck(Type type1, Type type2, boolean contains) {
+    BoundedCache<SuperTypeCheck, Boolean> cache = superTypeCheckCache;
+    // a capture is never equal to another one, so the same check is hardly ever done twice
+    if (cache == null || type1 instanceof CaptureType || type2 instanceof CaptureType) {
+      return contains ? containsUncached(type1, type2) : isSuperTypeUncached(type1, type2);
+    }
+
+    SuperTypeCheck key = new SuperTypeCheck(type1, type2, contains);
+    Boolean result = cache.get(key);
+    if (result == null) {
+      result = contains ? containsUncached(type1, type2) : isSuperTypeUncached(type1, type2);
+      cache.putIfAbsent(key, result);
+    }
+    return result;
+  }
+
+  /** Key in the superTypeCheckCache */
+  private static final class SuperTypeCheck {
+    private final Type type1;
+    private final Type type2;
+    private final boolean contains;
+    private final int hashCode;
+
+    SuperTypeCheck(Type type1, Type type2, boolean contains) {
+      this.type1 = type1;
+      this.type2 = type2;
+      this.contains = contains;
+      this.hashCode = (type1.hashCode() * 31 + type2.hashCode()) * 2 + (contains ? 1 : 0);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof SuperTypeCheck)) return false;
+      SuperTypeCheck other = (SuperTypeCheck) obj;
+      return hashCode == other.hashCode
+          && contains == other.contains
+          && type1.equals(other.type1)
+          && type2.equals(other.type2);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+
+  private static boolean isSuperTypeUncached(Type superType, Type subType) {
     if (superType instanceof ParameterizedType
         || superType instanceof Class
         || superType instanceof GenericArrayType) {
       Class<?> superClass = erase(superType);
+      if (!isErasedSuperType(superClass, subType)) {
+        return false; // no need to capture subType to find that out
+      }
       Type mappedSubType = getExactSuperType(capture(subType), superClass);
       if (mappedSubType == null) {
         return false;
@@ -202,8 +560,8 @@ public class GenericTypeReflector {
         assert pMappedSubType.getRawType() == superClass;
         ParameterizedType pSuperType = (ParameterizedType) superType;
 
-        Type[] superTypeArgs = pSuperType.getActualTypeArguments();
-        Type[] subTypeArgs = pMappedSubType.getActualTypeArguments();
+        Type[] superTypeArgs = ParameterizedTypeImpl.argumentsOf(pSuperType);
+        Type[] subTypeArgs = ParameterizedTypeImpl.argumentsOf(pMappedSubType);
         assert superTypeArgs.length == subTypeArgs.length;
         for (int i = 0; i < superTypeArgs.length; i++) {
           if (!contains(superTypeArgs[i], subTypeArgs[i])) {
@@ -216,7 +574,7 @@ public class GenericTypeReflector {
       }
     } else if (superType instanceof CaptureType) {
       if (superType.equals(subType)) return true;
-      for (Type lowerBound : ((CaptureType) superType).getLowerBounds()) {
+      for (Type lowerBound : CaptureTypeImpl.lowerBoundsOf((CaptureType) superType)) {
         if (isSuperType(lowerBound, subType)) {
           return true;
         }
@@ -257,14 +615,18 @@ public class GenericTypeReflector {
   }
 
   private static boolean contains(Type containingType, Type containedType) {
+    return cachedCheck(containingType, containedType, true);
+  }
+
+  private static boolean containsUncached(Type containingType, Type containedType) {
     if (containingType instanceof WildcardType) {
       WildcardType wContainingType = (WildcardType) containingType;
-      for (Type upperBound : wContainingType.getUpperBounds()) {
+      for (Type upperBound : WildcardTypeImpl.upperBoundsOf(wContainingType)) {
         if (!isSuperType(upperBound, containedType)) {
           return false;
         }
       }
-      for (Type lowerBound : wContainingType.getLowerBounds()) {
+      for (Type lowerBound : WildcardTypeImpl.lowerBoundsOf(wContainingType)) {
         if (!isSuperType(containedType, lowerBound)) {
           return false;
         }
@@ -287,39 +649,21 @@ public class GenericTypeReflector {
         if (clazz.isArray()) return getArrayExactDirectSuperTypes(clazz);
       }
 
-      Type[] superInterfaces = clazz.getGenericInterfaces();
-      Type superClass = clazz.getGenericSuperclass();
-
-      // the only supertype of an interface without superinterfaces is Object
-      if (superClass == null && superInterfaces.length == 0 && clazz.isInterface()) {
-        return new Type[] {Object.class};
-      }
-
-      Type[] result;
-      int resultIndex;
-      if (superClass == null) {
-        result = new Type[superInterfaces.length];
-        resultIndex = 0;
-      } else {
-        result = new Type[superInterfaces.length + 1];
-        resultIndex = 1;
-        result[0] = mapTypeParameters(superClass, type);
+      Type[] declaredSuperTypes = getDeclaredDirectSuperTypes(clazz);
+      Type[] result = new Type[declaredSuperTypes.length];
+      for (int i = 0; i < declaredSuperTypes.length; i++) {
+        result[i] = mapTypeParameters(declaredSuperTypes[i], type);
       }
-      for (Type superInterface : superInterfaces) {
-        result[resultIndex++] = mapTypeParameters(superInterface, type);
-      }
-
       return result;
     } else if (type instanceof TypeVariable) {
-      TypeVariable<?> tv = (TypeVariable<?>) type;
-      return tv.getBounds();
+      return GenericClassInfo.boundsOf((TypeVariable<?>) type);
     } else if (type instanceof WildcardType) {
       // This should be a rare case: normally this wildcard is already captured.
       // But it does happen if the upper bound of a type variable contains a wildcard
       // TODO shouldn't upper bound of type variable have been captured too? (making this case impossible?)
-      return ((WildcardType) type).getUpperBounds();
+      return WildcardTypeImpl.upperBoundsOf((WildcardType) type);
     } else if (type instanceof CaptureType) {
-      return ((CaptureType) type).getUpperBounds();
+      return CaptureTypeImpl.upperBoundsOf((CaptureType) type);
     } else if (type instanceof GenericArrayType) {
       return getArrayExactDirectSuperTypes(type);
     } else if (type == null) {
@@ -329,6 +673,14 @@ public class GenericTypeReflector {
     }
   }
 
+  /**
+   * Returns the direct supertypes of the given (non-array) class, as declared on the class: in terms
+   * of its own type variables. The returned array must not be modified.
+   */
+  static Type[] getDeclaredDirectSuperTypes(Class<?> clazz) {
+    return GenericClassInfo.get(clazz).getDeclaredDirectSuperTypes();
+  }
+
   private static Type[] getArrayExactDirectSuperTypes(Type arrayType) {
     // see http://java.sun.com/docs/books/jls/third_edition/html/typesValues.html#4.10.3
     Type typeComponent = getArrayComponentType(arrayType);
@@ -360,11 +712,8 @@ public class GenericTypeReflector {
    */
   public static Type getExactReturnType(Method m, Type type) {
     Type returnType = m.getGenericReturnType();
-    Type exactDeclaringType = getExactSuperType(capture(type), m.getDeclaringClass());
-    if (exactDeclaringType == null) { // capture(type) is not a subtype of m.getDeclaringClass()
-      throw new IllegalArgumentException("The method " + m + " is not a member of type " + type);
-    }
-    return mapTypeParameters(returnType, exactDeclaringType);
+    VarMap varMap = getDeclaringTypeParameterMap(m, "method", type);
+    return varMap == null ? erase(returnType) : varMap.map(returnType);
   }
 
   /**
@@ -374,11 +723,8 @@ public class GenericTypeReflector {
    */
   public static Type getExactFieldType(Field f, Type type) {
     Type returnType = f.getGenericType();
-    Type exactDeclaringType = getExactSuperType(capture(type), f.getDeclaringClass());
-    if (exactDeclaringType == null) { // capture(type) is not a subtype of f.getDeclaringClass()
-      throw new IllegalArgumentException("The field " + f + " is not a member of type " + type);
-    }
-    return mapTypeParameters(returnType, exactDeclaringType);
+    VarMap varMap = getDeclaringTypeParameterMap(f, "field", type);
+    return varMap == null ? erase(returnType) : varMap.map(returnType);
   }
 
   /**
@@ -389,14 +735,87 @@ public class GenericTypeReflector {
    */
   public static Type[] getExactParameterTypes(Method m, Type type) {
     Type[] parameterTypes = m.getGenericParameterTypes();
-    Type exactDeclaringType = getExactSuperType(capture(type), m.getDeclaringClass());
-    if (exactDeclaringType == null) { // capture(type) is not a subtype of m.getDeclaringClass()
-      throw new IllegalArgumentException("The method " + m + " is not a member of type " + type);
-    }
+    VarMap varMap = getDeclaringTypeParameterMap(m, "method", type);
 
     Type[] result = new Type[parameterTypes.length];
     for (int i = 0; i < parameterTypes.length; i++) {
-      result[i] = mapTypeParameters(parameterTypes[i], exactDeclaringType);
+      result[i] = varMap == null ? erase(parameterTypes[i]) : varMap.map(parameterTypes[i]);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the map for the type parameters of the class declaring <tt>member</tt>, as seen from
+   * (the capture of) <tt>type</tt>. Returns null if the exact supertype of <tt>type</tt> for that
+   * class is a raw type. When possible, the substitutions along the path from <tt>type</tt> to the
+   * declaring class are composed without creating that supertype.
+   *
+   * @throws IllegalArgumentException if <tt>member</tt> is not a member of <tt>type</tt>
+   */
+  private static VarMap getDeclaringTypeParameterMap(Member member, String memberKind, Type type) {
+    Type capturedType = capture(type);
+    Class<?> declaringClass = member.getDeclaringClass();
+    if (capturedType instanceof ParameterizedType || capturedType instanceof Class) {
+      Class<?> clazz = erase(capturedType);
+      if (clazz != declaringClass && declaringClass.isAssignableFrom(clazz)) {
+        AncestorIndex index = AncestorIndex.get(clazz);
+        if (index != null) {
+          return index.getTypeParameterMap(capturedType, declaringClass);
+        }
+      }
+    }
+
+    Type exactDeclaringType = getExactSuperType(capturedType, declaringClass);
+    if (exactDeclaringType == null) { // capturedType is not a subtype of declaringClass
+      throw new IllegalArgumentException(
+          "The " + memberKind + " " + member + " is not a member of type " + type);
+    }
+    return getTypeParameterMap(exactDeclaringType);
+  }
+
+  /**
+   * Returns the exact types of the given fields in the given type. This gives the same result as
+   * calling {@link #getExactFieldType(Field, Type)} for every field, but is faster for many fields:
+   * the type is only captured once, and the exact supertype is only determined once per declaring
+   * class.
+   */
+  public static Type[] getExactFieldTypes(Field[] fields, Type type) {
+    ResolvedType resolvedType = new ResolvedType(type);
+    Type[] result = new Type[fields.length];
+    for (int i = 0; i < fields.length; i++) {
+      result[i] = resolvedType.getExactFieldType(fields[i]);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the exact return types of the given methods in the given type. This gives the same
+   * result as calling {@link #getExactReturnType(Method, Type)} for every method, but is faster for
+   * many methods.
+   *
+   * @see #getExactFieldTypes(Field[], Type)
+   */
+  public static Type[] getExactReturnTypes(Method[] methods, Type type) {
+    ResolvedType resolvedType = new ResolvedType(type);
+    Type[] result = new Type[methods.length];
+    for (int i = 0; i < methods.length; i++) {
+      result[i] = resolvedType.getExactReturnType(methods[i]);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the exact parameter types of the given methods in the given type. This gives the same
+   * result as calling {@link #getExactParameterTypes(Method, Type)} for every method, but is faster
+   * for many methods.
+   *
+   * @see #getExactFieldTypes(Field[], Type)
+   */
+  public static Type[][] getExactParameterTypes(Method[] methods, Type type) {
+    ResolvedType resolvedType = new ResolvedType(type);
+    Type[][] result = new Type[methods.length][];
+    for (int i = 0; i < methods.length; i++) {
+      result[i] = resolvedType.getExactParameterTypes(methods[i]);
     }
     return result;
   }
@@ -416,35 +835,38 @@ public class GenericTypeReflector {
    * @see #capture(Type)
    */
   public static ParameterizedType capture(ParameterizedType type) {
-    // the map from parameters to their captured equivalent
-
-    VarMap varMap = new VarMap();
-    // list of CaptureTypes we've created but aren't fully initialized yet
-    // we can only initialize them *after* we've fully populated varMap
-    List<CaptureTypeImpl> toInit = new ArrayList<CaptureTypeImpl>();
+    if (!hasWildcardArguments(type)) {
+      // capture conversion only replaces wildcards, so there is nothing to do
+      return type;
+    }
 
     Class<?> clazz = (Class<?>) type.getRawType();
-    Type[] arguments = type.getActualTypeArguments();
-    TypeVariable<?>[] vars = clazz.getTypeParameters();
-    Type[] capturedArguments = new Type[arguments.length];
+    Type[] arguments = ParameterizedTypeImpl.argumentsOf(type);
+    TypeVariable<?>[] vars = GenericClassInfo.get(clazz).getTypeParameters();
 
     assert arguments.length == vars.length; // NICE throw an explaining exception
 
-    for (int i = 0; i < arguments.length; i++) {
-      Type argument = arguments[i];
-      if (argument instanceof WildcardType) {
-        CaptureTypeImpl captured = new CaptureTypeImpl((WildcardType) argument, vars[i]);
-        argument = captured;
-        toInit.add(captured);
+    Type[] capturedArguments = CaptureTypeImpl.captureArguments(vars, arguments);
+    Type ownerType = (type.getOwnerType() == null) ? null : capture(type.getOwnerType());
+    // a type containing new captures is not equal to anything else, so don't bother interning it
+    return capturedArguments == arguments
+        ? ParameterizedTypeImpl.createParameterizedType(clazz, arguments, ownerType)
+        : new ParameterizedTypeImpl(clazz, capturedArguments, ownerType);
+  }
+
+  /** Checks if any of the type arguments of the given type or of its owner types is a wildcard. */
+  private static boolean hasWildcardArguments(ParameterizedType type) {
+    Type handlingType = type;
+    while (handlingType instanceof ParameterizedType) {
+      ParameterizedType pType = (ParameterizedType) handlingType;
+      for (Type argument : ParameterizedTypeImpl.argumentsOf(pType)) {
+        if (argument instanceof WildcardType) {
+          return true;
+        }
       }
-      capturedArguments[i] = argument;
-      varMap.add(vars[i], argument);
-    }
-    for (CaptureTypeImpl captured : toInit) {
-      captured.init(varMap);
+      handlingType = pType.getOwnerType();
     }
-    Type ownerType = (type.getOwnerType() == null) ? null : capture(type.getOwnerType());
-    return new ParameterizedTypeImpl(clazz, capturedArguments, ownerType);
+    return false;
   }
 
   /** Returns the display name of a Type. */
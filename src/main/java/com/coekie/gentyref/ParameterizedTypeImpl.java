@@ -8,11 +8,31 @@ class ParameterizedTypeImpl implements ParameterizedType {
   private final Class<?> rawType;
   private final Type[] actualTypeArguments;
   private final Type ownerType;
+  private final int hashCode;
 
+  /**
+   * Creates a parameterized type. <tt>actualTypeArguments</tt> is not copied, because the hash code
+   * is computed from it up front: the caller must pass an array that is never modified afterwards,
+   * either a new one or one owned by another immutable type.
+   */
   public ParameterizedTypeImpl(Class<?> rawType, Type[] actualTypeArguments, Type ownerType) {
     this.rawType = rawType;
     this.actualTypeArguments = actualTypeArguments;
     this.ownerType = ownerType;
+    int hash = rawType.hashCode() ^ Arrays.hashCode(actualTypeArguments);
+    if (ownerType != null) hash ^= ownerType.hashCode();
+    this.hashCode = hash;
+  }
+
+  /**
+   * Returns a ParameterizedType with the given raw type, arguments and owner. This is the canonical
+   * instance if interning is enabled. Like the constructor, this does not copy
+   * <tt>actualTypeArguments</tt>.
+   */
+  static ParameterizedType createParameterizedType(
+      Class<?> rawType, Type[] actualTypeArguments, Type ownerType) {
+    return GenericTypeReflector.intern(
+        new ParameterizedTypeImpl(rawType, actualTypeArguments, ownerType));
   }
 
   public Type getRawType() {
@@ -20,7 +40,18 @@ class ParameterizedTypeImpl implements ParameterizedType {
   }
 
   public Type[] getActualTypeArguments() {
-    return actualTypeArguments;
+    return actualTypeArguments.clone();
+  }
+
+  /**
+   * Returns the type arguments of the given type, like {@link
+   * ParameterizedType#getActualTypeArguments()}, but without copying them if <tt>type</tt> is a
+   * ParameterizedTypeImpl. The returned array must not be modified.
+   */
+  static Type[] argumentsOf(ParameterizedType type) {
+    return type instanceof ParameterizedTypeImpl
+        ? ((ParameterizedTypeImpl) type).actualTypeArguments
+        : type.getActualTypeArguments();
   }
 
   public Type getOwnerType() {
@@ -29,11 +60,13 @@ class ParameterizedTypeImpl implements ParameterizedType {
 
   @Override
   public boolean equals(Object obj) {
+    if (this == obj) return true;
     if (!(obj instanceof ParameterizedType)) return false;
+    if (obj instanceof ParameterizedTypeImpl && hashCode != obj.hashCode()) return false;
 
     ParameterizedType other = (ParameterizedType) obj;
     return rawType.equals(other.getRawType())
-        && Arrays.equals(actualTypeArguments, other.getActualTypeArguments())
+        && Arrays.equals(actualTypeArguments, argumentsOf(other))
         && (ownerType == null
             ? other.getOwnerType() == null
             : ownerType.equals(other.getOwnerType()));
@@ -41,9 +74,7 @@ class ParameterizedTypeImpl implements ParameterizedType {
 
   @Override
   public int hashCode() {
-    int result = rawType.hashCode() ^ Arrays.hashCode(actualTypeArguments);
-    if (ownerType != null) result ^= ownerType.hashCode();
-    return result;
+    return hashCode;
   }
 
   @Override
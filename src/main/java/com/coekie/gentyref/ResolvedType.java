@@ -0,0 +1,318 @@
+package com.coekie.gentyref;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericDeclaration;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A type, with the exact types of its members resolved. This gives the same results as the methods
+ * in {@link GenericTypeReflector} such as {@link GenericTypeReflector#getExactFieldType(Field,
+ * Type)}, but the work that is common to all members (capturing the type, and finding the exact
+ * supertype for every class declaring members) is only done once.
+ *
+ * <p>Instances are obtained with {@link #get(Type)}, and are thread-safe. All members are resolved
+ * against the same capture of the type, so types containing a {@link CaptureType} returned for
+ * different members of the same ResolvedType refer to the same capture. Instances can be cached,
+ * see {@link #setCacheSize(int)}.
+ *
+ * <p>For example, to get the type of all fields of <tt>Foo&lt;String&gt;</tt>, including the ones
+ * inherited from its superclasses: <code>
+ * ResolvedType.get(new TypeToken&lt;Foo&lt;String&gt;&gt;(){}.getType()).getExactFieldTypes()
+ * </code>
+ */
+public final class ResolvedType {
+  /** Cache for {@link #get(Type)}. Null if the cache is disabled, which is the default. */
+  private static volatile BoundedCache<Type, ResolvedType> cache = null;
+
+  private final Type type;
+  private final Type capturedType;
+
+  /** The classes declaring members that we've looked at so far */
+  private final ConcurrentMap<Class<?>, DeclaringType> declaringTypes =
+      new ConcurrentHashMap<Class<?>, DeclaringType>();
+
+  private volatile Map<Field, Type> fieldTypes;
+  private volatile Map<Method, Type> returnTypes;
+
+  /**
+   * Creates a ResolvedType. Use {@link #get(Type)} instead, unless the ResolvedType is only used
+   * for a short while and should not be cached.
+   */
+  ResolvedType(Type type) {
+    this.type = type;
+    this.capturedType = GenericTypeReflector.capture(type);
+  }
+
+  /**
+   * Returns the ResolvedType for the given type. If the cache is enabled, this may return the same
+   * instance that was returned before for an equal type.
+   */
+  public static ResolvedType get(Type type) {
+    if (type == null) {
+      throw new NullPointerException();
+    }
+    BoundedCache<Type, ResolvedType> cache = ResolvedType.cache;
+    if (cache == null) {
+      return new ResolvedType(type);
+    }
+    ResolvedType result = cache.get(type);
+    if (result != null) {
+      cache.recordHit();
+      return result;
+    }
+    cache.recordMiss();
+    result = new ResolvedType(type);
+    // every ResolvedType of a type with wildcards has its own captures, which must not be shared
+    // with unrelated callers
+    if (result.capturedType != type) {
+      return result;
+    }
+    return cache.putIfAbsent(type, result);
+  }
+
+  /**
+   * Sets the maximum number of types for which {@link #get(Type)} caches the ResolvedType. Types
+   * containing wildcards are not cached, because each ResolvedType of such a type has its own
+   * capture of it. When the cache is full, the types that were added first are evicted first.
+   *
+   * <p>The cache is disabled (size 0) by default. Setting the size clears the cache.
+   */
+  public static void setCacheSize(int maxSize) {
+    if (maxSize < 0) {
+      throw new IllegalArgumentException("maxSize must not be negative, but was " + maxSize);
+    }
+    cache = maxSize == 0 ? null : new BoundedCache<Type, ResolvedType>(maxSize);
+  }
+
+  /**
+   * Returns the statistics of the cache of {@link #get(Type)}.
+   *
+   * @see #setCacheSize(int)
+   */
+  public static CacheStats getCacheStats() {
+    BoundedCache<Type, ResolvedType> cache = ResolvedType.cache;
+    return cache == null ? CacheStats.DISABLED : cache.getStats();
+  }
+
+  /** Returns the type that is resolved. */
+  public Type getType() {
+    return type;
+  }
+
+  /** @see GenericTypeReflector#getExactFieldType(Field, Type) */
+  public Type getExactFieldType(Field f) {
+    return getDeclaringType(f, "field").map(f.getGenericType());
+  }
+
+  /** @see GenericTypeReflector#getExactReturnType(Method, Type) */
+  public Type getExactReturnType(Method m) {
+    return getDeclaringType(m, "method").map(m.getGenericReturnType());
+  }
+
+  /** @see GenericTypeReflector#getExactParameterTypes(Method, Type) */
+  public Type[] getExactParameterTypes(Method m) {
+    return getDeclaringType(m, "method").map(m.getGenericParameterTypes());
+  }
+
+  /**
+   * Returns the exact parameter types of the given constructor in the type. This may be different
+   * from <tt>c.getGenericParameterTypes()</tt> when the type has a type parameter that is used in
+   * one of the parameters, or the type is a raw type.
+   *
+   * @throws IllegalArgumentException if <tt>c</tt> is not a constructor of (the erasure of) the
+   *     type. Note that constructors are not inherited.
+   */
+  public Type[] getExactParameterTypes(Constructor<?> c) {
+    if (c.getDeclaringClass() != GenericTypeReflector.erase(capturedType)) {
+      throw new IllegalArgumentException(
+          "The constructor " + c + " is not a constructor of type " + type);
+    }
+    return getDeclaringType(c, "constructor").map(c.getGenericParameterTypes());
+  }
+
+  /**
+   * Returns the exact types of all the fields declared in the class of this type and in its
+   * superclasses, including non-public and static fields. The fields of the class itself come
+   * first, followed by those of its superclass, and so on.
+   */
+  public Map<Field, Type> getExactFieldTypes() {
+    Map<Field, Type> result = fieldTypes;
+    if (result == null) {
+      result = new LinkedHashMap<Field, Type>();
+      for (Class<?> clazz = GenericTypeReflector.erase(capturedType);
+          clazz != null;
+          clazz = clazz.getSuperclass()) {
+        for (Field field : clazz.getDeclaredFields()) {
+          result.put(field, getExactFieldType(field));
+        }
+      }
+      result = Collections.unmodifiableMap(result);
+      fieldTypes = result;
+    }
+    return result;
+  }
+
+  /**
+   * Returns the exact return types of all the methods declared in the class of this type and in
+   * all its superclasses and superinterfaces, including non-public and static methods. The methods
+   * of the class itself come first, followed by those of its superclasses, and then those of the
+   * interfaces. A method that is overridden is included once for every class declaring it.
+   *
+   * <p>Unlike {@link #getExactReturnType(Method)}, this does not fail for generic methods: the type
+   * parameters declared by a method itself are left as they are.
+   */
+  public Map<Method, Type> getExactReturnTypes() {
+    Map<Method, Type> result = returnTypes;
+    if (result == null) {
+      result = new LinkedHashMap<Method, Type>();
+      for (Class<?> clazz : getHierarchy()) {
+        for (Method method : clazz.getDeclaredMethods()) {
+          result.put(
+              method,
+              getDeclaringType(method, "method")
+                  .mapKeeping(method, method.getGenericReturnType()));
+        }
+      }
+      result = Collections.unmodifiableMap(result);
+      returnTypes = result;
+    }
+    return result;
+  }
+
+  /**
+   * Returns the exact parameter types of all the methods declared in the class of this type and in
+   * all its superclasses and superinterfaces, in the same order as {@link #getExactReturnTypes()}.
+   * The type parameters declared by a method itself are left as they are. This returns a new map
+   * on every call.
+   */
+  public Map<Method, Type[]> getExactMethodParameterTypes() {
+    Map<Method, Type[]> result = new LinkedHashMap<Method, Type[]>();
+    for (Method method : getExactReturnTypes().keySet()) {
+      result.put(
+          method,
+          getDeclaringType(method, "method")
+              .mapKeeping(method, method.getGenericParameterTypes()));
+    }
+    return result;
+  }
+
+  /**
+   * Returns the exact parameter types of all the constructors declared in the class of this type,
+   * including non-public ones. The type parameters declared by a constructor itself are left as
+   * they are. This returns a new map on every call.
+   */
+  public Map<Constructor<?>, Type[]> getExactConstructorParameterTypes() {
+    Map<Constructor<?>, Type[]> result = new LinkedHashMap<Constructor<?>, Type[]>();
+    for (Constructor<?> constructor :
+        GenericTypeReflector.erase(capturedType).getDeclaredConstructors()) {
+      result.put(
+          constructor,
+          getDeclaringType(constructor, "constructor")
+              .mapKeeping(constructor, constructor.getGenericParameterTypes()));
+    }
+    return result;
+  }
+
+  /**
+   * Returns the class of this type, followed by its superclasses, followed by all the interfaces
+   * they implement (directly or indirectly), each only once.
+   */
+  private List<Class<?>> getHierarchy() {
+    List<Class<?>> result = new ArrayList<Class<?>>();
+    for (Class<?> clazz = GenericTypeReflector.erase(capturedType);
+        clazz != null;
+        clazz = clazz.getSuperclass()) {
+      result.add(clazz);
+    }
+    Set<Class<?>> seen = new HashSet<Class<?>>(result);
+    for (int i = 0; i < result.size(); i++) {
+      for (Class<?> superInterface : result.get(i).getInterfaces()) {
+        if (seen.add(superInterface)) {
+          result.add(superInterface);
+        }
+      }
+    }
+    return result;
+  }
+
+  private DeclaringType getDeclaringType(Member member, String memberKind) {
+    Class<?> declaringClass = member.getDeclaringClass();
+    DeclaringType result = declaringTypes.get(declaringClass);
+    if (result == null) {
+      Type exactDeclaringType =
+          GenericTypeReflector.getExactSuperType(capturedType, declaringClass);
+      result = new DeclaringType(exactDeclaringType);
+      DeclaringType existing = declaringTypes.putIfAbsent(declaringClass, result);
+      if (existing != null) {
+        result = existing;
+      }
+    }
+    if (result.exactType == null) { // capturedType is not a subtype of the declaring class
+      throw new IllegalArgumentException(
+          "The " + memberKind + " " + member + " is not a member of type " + type);
+    }
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return "ResolvedType[" + GenericTypeReflector.getTypeName(type) + "]";
+  }
+
+  /** A class declaring members, as seen from the resolved type */
+  private static final class DeclaringType {
+    /** The exact supertype of the captured type for this class, or null if it isn't one */
+    private final Type exactType;
+    /** Map for the type parameters of the class, or null if exactType is a raw type. */
+    private final VarMap varMap;
+
+    DeclaringType(Type exactType) {
+      this.exactType = exactType;
+      this.varMap = exactType == null ? null : GenericTypeReflector.getTypeParameterMap(exactType);
+    }
+
+    Type map(Type toMap) {
+      return varMap == null ? GenericTypeReflector.erase(toMap) : varMap.map(toMap);
+    }
+
+    Type[] map(Type[] toMap) {
+      Type[] result = new Type[toMap.length];
+      for (int i = 0; i < toMap.length; i++) {
+        result[i] = map(toMap[i]);
+      }
+      return result;
+    }
+
+    /** Like {@link #map(Type)}, but leaves the type parameters of <tt>member</tt> itself alone */
+    Type mapKeeping(GenericDeclaration member, Type toMap) {
+      return varMap == null
+          ? GenericTypeReflector.erase(toMap)
+          : varMap.keeping(member.getTypeParameters()).map(toMap);
+    }
+
+    /** Like {@link #map(Type[])}, but leaves the type parameters of <tt>member</tt> itself alone */
+    Type[] mapKeeping(GenericDeclaration member, Type[] toMap) {
+      if (varMap == null) {
+        return map(toMap);
+      }
+      VarMap memberVarMap = varMap.keeping(member.getTypeParameters());
+      Type[] result = new Type[toMap.length];
+      for (int i = 0; i < toMap.length; i++) {
+        result[i] = memberVarMap.map(toMap[i]);
+      }
+      return result;
+    }
+  }
+}
@@ -1,11 +1,11 @@
 package com.coekie.gentyref;
 
 import java.lang.reflect.GenericArrayType;
-import java.lang.reflect.Modifier;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.lang.reflect.TypeVariable;
 import java.lang.reflect.WildcardType;
+import java.util.Arrays;
 
 /**
  * Utility class for creating instances of {@link Type}. These types can be used with the {@link
@@ -14,8 +14,12 @@ import java.lang.reflect.WildcardType;
  * @author Wouter Coekaerts <wouter@coekaerts.be>
  */
 public class TypeFactory {
-  private static final WildcardType UNBOUND_WILDCARD =
-      new WildcardTypeImpl(new Type[] {Object.class}, new Type[] {});
+  /**
+   * Cache for {@link #parameterizedInnerClass(Type, Class, Type...)}: the types that were already
+   * created and validated, by the parameters they were created with. Null if the cache is
+   * disabled, which is the default.
+   */
+  private static volatile BoundedCache<TypeRequest, Type> validatedTypeCache = null;
 
   /**
    * Creates a type of class <tt>clazz</tt> with <tt>arguments</tt> as type arguments.
@@ -83,6 +87,51 @@ public class TypeFactory {
    *     null.
    */
   public static Type parameterizedInnerClass(Type owner, Class<?> clazz, Type... arguments) {
+    BoundedCache<TypeRequest, Type> cache = validatedTypeCache;
+    if (cache == null) {
+      return createParameterizedInnerClass(owner, clazz, arguments);
+    }
+
+    TypeRequest request = new TypeRequest(owner, clazz, arguments);
+    Type result = cache.get(request);
+    if (result != null) {
+      cache.recordHit();
+    } else {
+      cache.recordMiss();
+      // only valid types are cached: if this throws an exception, it will be thrown again next time
+      result = cache.putIfAbsent(request, createParameterizedInnerClass(owner, clazz, arguments));
+    }
+    return result;
+  }
+
+  /**
+   * Sets the maximum number of types created by {@link #parameterizedInnerClass(Type, Class,
+   * Type...)} (and the other methods creating parameterized types) that are cached, so that
+   * creating them again does not need to validate them again. When the cache is full, the types
+   * that were added first are evicted first.
+   *
+   * <p>The cache is disabled (size 0) by default: the cached types refer to the classes they were
+   * created from, which keeps those classes from being unloaded. Setting the size clears the cache.
+   */
+  public static void setValidatedTypeCacheSize(int maxSize) {
+    if (maxSize < 0) {
+      throw new IllegalArgumentException("maxSize must not be negative, but was " + maxSize);
+    }
+    validatedTypeCache = maxSize == 0 ? null : new BoundedCache<TypeRequest, Type>(maxSize);
+  }
+
+  /**
+   * Returns the statistics of the cache of created types.
+   *
+   * @see #setValidatedTypeCacheSize(int)
+   */
+  public static CacheStats getValidatedTypeCacheStats() {
+    BoundedCache<TypeRequest, Type> cache = validatedTypeCache;
+    return cache == null ? CacheStats.DISABLED : cache.getStats();
+  }
+
+  /** Implementation of parameterizedInnerClass, without caching */
+  private static Type createParameterizedInnerClass(Type owner, Class<?> clazz, Type[] arguments) {
     // never allow an owner on a class that doesn't have one
     if (clazz.getDeclaringClass() == null && owner != null) {
       throw new IllegalArgumentException("Cannot specify an owner type for a top level class");
@@ -90,8 +139,9 @@ public class TypeFactory {
 
     Type realOwner = transformOwner(owner, clazz);
 
+    int typeParameterCount = GenericClassInfo.get(clazz).getTypeParameters().length;
     if (arguments == null) {
-      if (clazz.getTypeParameters().length == 0) {
+      if (typeParameterCount == 0) {
         // no arguments known, but no needed so just use an empty argument list.
         // (we can still end up with a generic type if the owner is generic)
         arguments = new Type[0];
@@ -100,13 +150,13 @@ public class TypeFactory {
         return clazz;
       }
     } else {
-      if (arguments.length != clazz.getTypeParameters().length) {
+      if (arguments.length != typeParameterCount) {
         throw new IllegalArgumentException(
             "Incorrect number of type arguments for ["
                 + clazz
                 + "]: "
                 + "expected "
-                + clazz.getTypeParameters().length
+                + typeParameterCount
                 + ", but got "
                 + arguments.length);
       }
@@ -119,14 +169,15 @@ public class TypeFactory {
 
     // if the owner type is missing type parameters and clazz is non-static, this is a raw type
     if (realOwner != null
-        && !Modifier.isStatic(clazz.getModifiers())
+        && !GenericClassInfo.get(clazz).isStatic()
         && GenericTypeReflector.isMissingTypeParameters(realOwner)) {
       return clazz;
     }
 
-    ParameterizedType result = new ParameterizedTypeImpl(clazz, arguments, realOwner);
+    // the result is cached and shared, so it must not keep the caller's array
+    ParameterizedType result = new ParameterizedTypeImpl(clazz, arguments.clone(), realOwner);
     checkParametersWithinBound(result);
-    return result;
+    return GenericTypeReflector.intern(result);
   }
 
   /**
@@ -143,40 +194,55 @@ public class TypeFactory {
    * @throws IllegalArgumentException if the type arguments are not within the bounds
    */
   private static void checkParametersWithinBound(ParameterizedType type) {
-    Type[] arguments = type.getActualTypeArguments();
-    TypeVariable<?>[] typeParameters = ((Class<?>) type.getRawType()).getTypeParameters();
-
     // a map of type arguments in the type, to fill in variables in the bounds
     VarMap varMap = new VarMap(type);
 
-    // for every bound on every parameter
-    for (int i = 0; i < arguments.length; i++) {
-      for (Type bound : typeParameters[i].getBounds()) {
-        // replace type variables in the bound by their value
-        Type replacedBound = varMap.map(bound);
+    for (int i = 0; i < ParameterizedTypeImpl.argumentsOf(type).length; i++) {
+      checkParameterWithinBound(type, i, varMap);
+    }
+  }
+
+  /**
+   * Check if the type argument at the given position in the given type is within the bounds
+   * declared on its type parameter.
+   *
+   * @param type possibly inconsistent type to check.
+   * @param index the position of the type argument to check
+   * @param varMap the map of the type arguments in the type, to fill in variables in the bounds
+   * @throws IllegalArgumentException if the type argument is not within the bounds
+   * @see #checkParametersWithinBound(ParameterizedType)
+   */
+  static void checkParameterWithinBound(ParameterizedType type, int index, VarMap varMap) {
+    Type argument = ParameterizedTypeImpl.argumentsOf(type)[index];
+    GenericClassInfo info = GenericClassInfo.get((Class<?>) type.getRawType());
+    TypeVariable<?> typeParameter = info.getTypeParameters()[index];
 
-        if (arguments[i] instanceof WildcardType) {
-          WildcardType wildcardTypeParameter = (WildcardType) arguments[i];
+    // for every bound on the parameter
+    for (Type bound : info.getTypeParameterBounds()[index]) {
+      // replace type variables in the bound by their value
+      Type replacedBound = varMap.map(bound);
 
-          // Check if a type satisfying both the bounds of the variable and of the wildcard could exist
+      if (argument instanceof WildcardType) {
+        WildcardType wildcardTypeParameter = (WildcardType) argument;
 
-          // upper bounds must not be mutually exclusive
-          for (Type wildcardUpperBound : wildcardTypeParameter.getUpperBounds()) {
-            if (!couldHaveCommonSubtype(replacedBound, wildcardUpperBound)) {
-              throw new TypeArgumentNotInBoundException(arguments[i], typeParameters[i], bound);
-            }
-          }
-          // a lowerbound in the wildcard must satisfy every upperbound
-          for (Type wildcardLowerBound : wildcardTypeParameter.getLowerBounds()) {
-            if (!GenericTypeReflector.isSuperType(replacedBound, wildcardLowerBound)) {
-              throw new TypeArgumentNotInBoundException(arguments[i], typeParameters[i], bound);
-            }
+        // Check if a type satisfying both the bounds of the variable and of the wildcard could exist
+
+        // upper bounds must not be mutually exclusive
+        for (Type wildcardUpperBound : WildcardTypeImpl.upperBoundsOf(wildcardTypeParameter)) {
+          if (!couldHaveCommonSubtype(replacedBound, wildcardUpperBound)) {
+            throw new TypeArgumentNotInBoundException(argument, typeParameter, bound);
           }
-        } else {
-          if (!GenericTypeReflector.isSuperType(replacedBound, arguments[i])) {
-            throw new TypeArgumentNotInBoundException(arguments[i], typeParameters[i], bound);
+        }
+        // a lowerbound in the wildcard must satisfy every upperbound
+        for (Type wildcardLowerBound : WildcardTypeImpl.lowerBoundsOf(wildcardTypeParameter)) {
+          if (!GenericTypeReflector.isSuperType(replacedBound, wildcardLowerBound)) {
+            throw new TypeArgumentNotInBoundException(argument, typeParameter, bound);
           }
         }
+      } else {
+        if (!GenericTypeReflector.isSuperType(replacedBound, argument)) {
+          throw new TypeArgumentNotInBoundException(argument, typeParameter, bound);
+        }
       }
     }
   }
@@ -225,7 +291,7 @@ public class TypeFactory {
                 + clazz.getDeclaringClass());
       }
 
-      if (Modifier.isStatic(clazz.getModifiers())) {
+      if (GenericClassInfo.get(clazz).isStatic()) {
         // for a static inner class, the owner shouldn't have type parameters
         return GenericTypeReflector.erase(transformedOwner);
       } else {
@@ -241,7 +307,7 @@ public class TypeFactory {
    * @return The unbound wildcard type
    */
   public static WildcardType unboundWildcard() {
-    return UNBOUND_WILDCARD;
+    return WildcardTypeImpl.UNBOUND;
   }
 
   /**
@@ -257,7 +323,7 @@ public class TypeFactory {
     if (upperBound == null) {
       throw new NullPointerException();
     }
-    return new WildcardTypeImpl(new Type[] {upperBound}, new Type[] {});
+    return WildcardTypeImpl.createWildcardType(new Type[] {upperBound}, new Type[] {});
   }
 
   /**
@@ -272,7 +338,7 @@ public class TypeFactory {
     if (lowerBound == null) {
       throw new NullPointerException();
     }
-    return new WildcardTypeImpl(new Type[] {Object.class}, new Type[] {lowerBound});
+    return WildcardTypeImpl.createWildcardType(new Type[] {Object.class}, new Type[] {lowerBound});
   }
 
   /**
@@ -296,4 +362,65 @@ public class TypeFactory {
   public static Type arrayOf(Type componentType) {
     return GenericArrayTypeImpl.createArrayType(componentType);
   }
+
+  /**
+   * Creates a template for types that all have the same shape, but differ in some of the types in
+   * it. The types that differ are represented by type variables in <tt>shape</tt>, and are filled
+   * in with {@link TypeTemplate#instantiate(Type...)}.
+   *
+   * <p>For example, with <tt>E</tt> the type variable of <tt>List</tt>:
+   *
+   * <pre>
+   * TypeVariable&lt;?&gt; e = List.class.getTypeParameters()[0];
+   * TypeTemplate template = template(
+   *     parameterizedClass(Map.class, String.class, parameterizedClass(List.class, e)), e);
+   * </pre>
+   *
+   * <tt>template.instantiate(Integer.class)</tt> returns the type <tt>Map&lt;String,
+   * List&lt;Integer&gt;&gt;</tt>.
+   *
+   * @param shape The type to create instances of.
+   * @param slots The type variables in <tt>shape</tt> that are replaced when instantiating the
+   *     template, in the order their values are given to {@link TypeTemplate#instantiate(Type...)}.
+   * @throws IllegalArgumentException if the same type variable is given twice as slot, or if a
+   *     type argument in <tt>shape</tt> that does not depend on the slots is not within the bounds
+   *     of its type variable.
+   * @throws NullPointerException if <tt>shape</tt> or one of the slots is null.
+   */
+  public static TypeTemplate template(Type shape, TypeVariable<?>... slots) {
+    return new TypeTemplate(shape, slots);
+  }
+
+  /** Key in the validatedTypeCache: the parameters given to parameterizedInnerClass */
+  private static final class TypeRequest {
+    private final Type owner;
+    private final Class<?> clazz;
+    private final Type[] arguments;
+    private final int hashCode;
+
+    TypeRequest(Type owner, Class<?> clazz, Type[] arguments) {
+      this.owner = owner;
+      this.clazz = clazz;
+      // copy the arguments, the caller could still change the array
+      this.arguments = arguments == null ? null : arguments.clone();
+      int hash = clazz.hashCode() * 31 + Arrays.hashCode(arguments);
+      if (owner != null) hash ^= owner.hashCode();
+      this.hashCode = hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof TypeRequest)) return false;
+      TypeRequest other = (TypeRequest) obj;
+      return hashCode == other.hashCode
+          && clazz == other.clazz
+          && Arrays.equals(arguments, other.arguments)
+          && (owner == null ? other.owner == null : owner.equals(other.owner));
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
 }
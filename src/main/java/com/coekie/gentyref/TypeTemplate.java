@@ -0,0 +1,268 @@
+package com.coekie.gentyref;
+
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A template for types of the same shape, with slots for the types that differ. Created with
+ * {@link TypeFactory#template(Type, TypeVariable...)}.
+ *
+ * <p>The shape is analyzed once, when the template is created. Parts of it that do not depend on
+ * any slot are shared by all instances, and type arguments that do not depend on any slot are
+ * checked against their bounds only once, when the template is created. Instantiating the template
+ * only creates the parts that contain a slot, and only checks the bounds of the type arguments
+ * that depend on one.
+ *
+ * <p>Templates are immutable and thread-safe.
+ */
+public final class TypeTemplate {
+  private final Type shape;
+  private final int slotCount;
+  private final Node root;
+
+  TypeTemplate(Type shape, TypeVariable<?>[] slots) {
+    if (shape == null) {
+      throw new NullPointerException();
+    }
+    List<TypeVariable<?>> slotList = new ArrayList<TypeVariable<?>>(slots.length);
+    for (TypeVariable<?> slot : slots) {
+      if (slot == null) {
+        throw new NullPointerException();
+      }
+      if (slotList.contains(slot)) {
+        throw new IllegalArgumentException("Slot " + slot + " is given twice");
+      }
+      slotList.add(slot);
+    }
+    this.shape = shape;
+    this.slotCount = slots.length;
+    this.root = compile(shape, slotList);
+  }
+
+  /**
+   * Returns the type with the given types filled in for the slots.
+   *
+   * @param arguments The types for the slots, in the order the slots were given when creating the
+   *     template.
+   * @throws IllegalArgumentException if the number of arguments does not match the number of
+   *     slots, or if a type argument that depends on the slots is not within the bounds of its type
+   *     variable.
+   * @throws NullPointerException if one of the arguments is null.
+   */
+  public Type instantiate(Type... arguments) {
+    if (arguments.length != slotCount) {
+      throw new IllegalArgumentException(
+          "Incorrect number of arguments for template "
+              + this
+              + ": expected "
+              + slotCount
+              + ", but got "
+              + arguments.length);
+    }
+    for (Type argument : arguments) {
+      if (argument == null) {
+        throw new NullPointerException();
+      }
+    }
+    return root.instantiate(arguments);
+  }
+
+  @Override
+  public String toString() {
+    return "TypeTemplate[" + GenericTypeReflector.getTypeName(shape) + "]";
+  }
+
+  private static Node compile(Type type, List<TypeVariable<?>> slots) {
+    if (!containsSlot(type, slots)) {
+      return new ConstantNode(type);
+    }
+    if (type instanceof TypeVariable) {
+      return new SlotNode(slots.indexOf(type));
+    } else if (type instanceof ParameterizedType) {
+      ParameterizedType pType = (ParameterizedType) type;
+      Type[] arguments = ParameterizedTypeImpl.argumentsOf(pType);
+      Type ownerType = pType.getOwnerType();
+      return new ParameterizedNode(
+          (Class<?>) pType.getRawType(),
+          compile(arguments, slots),
+          ownerType == null ? null : compile(ownerType, slots),
+          checkStaticBounds(pType, slots));
+    } else if (type instanceof WildcardType) {
+      WildcardType wType = (WildcardType) type;
+      return new WildcardNode(
+          compile(WildcardTypeImpl.upperBoundsOf(wType), slots),
+          compile(WildcardTypeImpl.lowerBoundsOf(wType), slots));
+    } else if (type instanceof GenericArrayType) {
+      return new ArrayNode(compile(((GenericArrayType) type).getGenericComponentType(), slots));
+    } else {
+      throw new AssertionError("Unexpected type " + type.getClass());
+    }
+  }
+
+  private static Node[] compile(Type[] types, List<TypeVariable<?>> slots) {
+    Node[] result = new Node[types.length];
+    for (int i = 0; i < types.length; i++) {
+      result[i] = compile(types[i], slots);
+    }
+    return result;
+  }
+
+  /**
+   * Checks the bounds of the type arguments of <tt>type</tt> that do not depend on any slot: the
+   * argument itself does not contain a slot, and neither do the values of the type variables used
+   * in its bounds.
+   *
+   * @return the positions of the type arguments that could not be checked yet, because they do
+   *     depend on a slot
+   */
+  private static int[] checkStaticBounds(ParameterizedType type, List<TypeVariable<?>> slots) {
+    Type[] arguments = ParameterizedTypeImpl.argumentsOf(type);
+    Type[][] bounds = GenericClassInfo.get((Class<?>) type.getRawType()).getTypeParameterBounds();
+    VarMap varMap = new VarMap(type);
+    int[] deferred = new int[arguments.length];
+    int deferredCount = 0;
+    for (int i = 0; i < arguments.length; i++) {
+      if (containsSlot(arguments[i], slots) || containsSlot(varMap.map(bounds[i]), slots)) {
+        deferred[deferredCount++] = i;
+      } else {
+        TypeFactory.checkParameterWithinBound(type, i, varMap);
+      }
+    }
+    return Arrays.copyOf(deferred, deferredCount);
+  }
+
+  private static boolean containsSlot(Type type, List<TypeVariable<?>> slots) {
+    if (type instanceof TypeVariable) {
+      return slots.contains(type);
+    } else if (type instanceof ParameterizedType) {
+      ParameterizedType pType = (ParameterizedType) type;
+      return containsSlot(ParameterizedTypeImpl.argumentsOf(pType), slots)
+          || (pType.getOwnerType() != null && containsSlot(pType.getOwnerType(), slots));
+    } else if (type instanceof WildcardType) {
+      WildcardType wType = (WildcardType) type;
+      return containsSlot(WildcardTypeImpl.upperBoundsOf(wType), slots)
+          || containsSlot(WildcardTypeImpl.lowerBoundsOf(wType), slots);
+    } else if (type instanceof GenericArrayType) {
+      return containsSlot(((GenericArrayType) type).getGenericComponentType(), slots);
+    } else {
+      // classes, and also captures: their bounds are not part of the type itself
+      return false;
+    }
+  }
+
+  private static boolean containsSlot(Type[] types, List<TypeVariable<?>> slots) {
+    for (Type type : types) {
+      if (containsSlot(type, slots)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** A part of the shape of the template */
+  private abstract static class Node {
+    abstract Type instantiate(Type[] arguments);
+
+    static Type[] instantiate(Node[] nodes, Type[] arguments) {
+      Type[] result = new Type[nodes.length];
+      for (int i = 0; i < nodes.length; i++) {
+        result[i] = nodes[i].instantiate(arguments);
+      }
+      return result;
+    }
+  }
+
+  /** A part of the shape that doesn't depend on any slot, shared by all instances */
+  private static final class ConstantNode extends Node {
+    private final Type type;
+
+    ConstantNode(Type type) {
+      this.type = type;
+    }
+
+    @Override
+    Type instantiate(Type[] arguments) {
+      return type;
+    }
+  }
+
+  private static final class SlotNode extends Node {
+    private final int index;
+
+    SlotNode(int index) {
+      this.index = index;
+    }
+
+    @Override
+    Type instantiate(Type[] arguments) {
+      return arguments[index];
+    }
+  }
+
+  private static final class ParameterizedNode extends Node {
+    private final Class<?> rawType;
+    private final Node[] arguments;
+    private final Node ownerType;
+    /** The positions of the arguments whose bounds have to be checked when instantiating */
+    private final int[] deferredBoundChecks;
+
+    ParameterizedNode(
+        Class<?> rawType, Node[] arguments, Node ownerType, int[] deferredBoundChecks) {
+      this.rawType = rawType;
+      this.arguments = arguments;
+      this.ownerType = ownerType;
+      this.deferredBoundChecks = deferredBoundChecks;
+    }
+
+    @Override
+    Type instantiate(Type[] slotArguments) {
+      ParameterizedType result =
+          ParameterizedTypeImpl.createParameterizedType(
+              rawType,
+              instantiate(arguments, slotArguments),
+              ownerType == null ? null : ownerType.instantiate(slotArguments));
+      if (deferredBoundChecks.length != 0) {
+        VarMap varMap = new VarMap(result);
+        for (int index : deferredBoundChecks) {
+          TypeFactory.checkParameterWithinBound(result, index, varMap);
+        }
+      }
+      return result;
+    }
+  }
+
+  private static final class WildcardNode extends Node {
+    private final Node[] upperBounds;
+    private final Node[] lowerBounds;
+
+    WildcardNode(Node[] upperBounds, Node[] lowerBounds) {
+      this.upperBounds = upperBounds;
+      this.lowerBounds = lowerBounds;
+    }
+
+    @Override
+    Type instantiate(Type[] arguments) {
+      return WildcardTypeImpl.createWildcardType(
+          instantiate(upperBounds, arguments), instantiate(lowerBounds, arguments));
+    }
+  }
+
+  private static final class ArrayNode extends Node {
+    private final Node componentType;
+
+    ArrayNode(Node componentType) {
+      this.componentType = componentType;
+    }
+
+    @Override
+    Type instantiate(Type[] arguments) {
+      return GenericArrayTypeImpl.createArrayType(componentType.instantiate(arguments));
+    }
+  }
+}
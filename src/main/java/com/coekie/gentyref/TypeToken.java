@@ -1,7 +1,11 @@
 package com.coekie.gentyref;
 
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Wrapper around {@link Type}.
@@ -11,15 +15,57 @@ import java.lang.reflect.Type;
  * <p>For example, to get the Type that represents List&lt;String&gt;: <code>
  * Type listOfString = new TypeToken&lt;List&lt;String&gt;&gt;(){}.getType();</code>
  *
+ * <p>A TypeToken can also be used to resolve the types of members and supertypes, with methods
+ * like {@link #resolveField(Field)} and {@link #getSupertype(Class)}. Those give the same results
+ * as the corresponding methods in {@link GenericTypeReflector}, but the token remembers what it
+ * has worked out, so asking again (or asking about other members declared in the same class) is
+ * cheap. This makes it worthwhile to keep tokens that are used often in constants.
+ *
  * @author Wouter Coekaerts <wouter@coekaerts.be>
  * @param <T> The type represented by this TypeToken.
  */
 public abstract class TypeToken<T> {
+  /**
+   * The type represented by each subclass of TypeToken. Extracting it from the generic superclass
+   * of the subclass is expensive, so it's done only once per subclass.
+   */
+  private static final ClassValue<Type> EXTRACTED_TYPES =
+      new ClassValue<Type>() {
+        @Override
+        protected Type computeValue(Class<?> tokenClass) {
+          return extractType(tokenClass);
+        }
+      };
+
+  /** The tokens returned by {@link #get(Class)} */
+  private static final ClassValue<TypeToken<?>> CLASS_TOKENS =
+      new ClassValue<TypeToken<?>>() {
+        @Override
+        protected TypeToken<?> computeValue(Class<?> type) {
+          return new TypeToken<Object>(type) {};
+        }
+      };
+
+  /** The tokens returned by {@link #get(Type)}, for types that are not a class */
+  private static final WeakInterner<TypeToken<?>> TYPE_TOKENS = new WeakInterner<TypeToken<?>>();
+
+  /** Marker in superTypes for a class that is not a supertype */
+  private static final Type NO_SUPER_TYPE = new Type() {};
+
   private final Type type;
 
+  /** The type with its members resolved, created when first needed */
+  private volatile ResolvedType resolvedType;
+
+  /** Lock for creating resolvedType */
+  private final Object resolvedTypeLock = new Object();
+
+  /** The results of {@link #getSupertype(Class)}, created when first needed */
+  private volatile ConcurrentMap<Class<?>, Type> superTypes;
+
   /** Constructs a type token. */
   protected TypeToken() {
-    this.type = extractType();
+    this.type = EXTRACTED_TYPES.get(getClass());
   }
 
   private TypeToken(Type type) {
@@ -30,8 +76,92 @@ public abstract class TypeToken<T> {
     return type;
   }
 
-  private Type extractType() {
-    Type t = getClass().getGenericSuperclass();
+  /**
+   * Returns the exact type of the given field in the type of this token.
+   *
+   * @see GenericTypeReflector#getExactFieldType(Field, Type)
+   */
+  public Type resolveField(Field f) {
+    return getResolvedType().getExactFieldType(f);
+  }
+
+  /**
+   * Returns the exact return type of the given method in the type of this token.
+   *
+   * @see GenericTypeReflector#getExactReturnType(Method, Type)
+   */
+  public Type resolveReturnType(Method m) {
+    return getResolvedType().getExactReturnType(m);
+  }
+
+  /**
+   * Returns the exact parameter types of the given method in the type of this token.
+   *
+   * @see GenericTypeReflector#getExactParameterTypes(Method, Type)
+   */
+  public Type[] resolveParameterTypes(Method m) {
+    return getResolvedType().getExactParameterTypes(m);
+  }
+
+  /**
+   * Returns the supertype of the type of this token whose erasure is <tt>searchClass</tt>, or null
+   * if there is none.
+   *
+   * @see GenericTypeReflector#getExactSuperType(Type, Class)
+   */
+  public Type getSupertype(Class<?> searchClass) {
+    ConcurrentMap<Class<?>, Type> map = superTypes;
+    if (map == null) {
+      map = new ConcurrentHashMap<Class<?>, Type>(4);
+      superTypes = map; // if another thread did the same, we only lose some results
+    }
+    Type result = map.get(searchClass);
+    if (result == null) {
+      result = GenericTypeReflector.getExactSuperType(type, searchClass);
+      map.putIfAbsent(searchClass, result == null ? NO_SUPER_TYPE : result);
+    }
+    return result == NO_SUPER_TYPE ? null : result;
+  }
+
+  /**
+   * Checks if the type of this token is a supertype of (the capture of) <tt>subType</tt>.
+   *
+   * @see GenericTypeReflector#isSuperType(Type, Type)
+   */
+  public boolean isSupertypeOf(Type subType) {
+    return GenericTypeReflector.isSuperType(type, subType);
+  }
+
+  /**
+   * Checks if the type of this token is a supertype of (the capture of) the type of
+   * <tt>subType</tt>.
+   *
+   * @see GenericTypeReflector#isSuperType(Type, Type)
+   */
+  public boolean isSupertypeOf(TypeToken<?> subType) {
+    return isSupertypeOf(subType.type);
+  }
+
+  /**
+   * Returns the ResolvedType for the type of this token. All members are resolved against the same
+   * capture of the type.
+   */
+  private ResolvedType getResolvedType() {
+    ResolvedType result = resolvedType;
+    if (result == null) {
+      synchronized (resolvedTypeLock) {
+        result = resolvedType;
+        if (result == null) {
+          result = new ResolvedType(type);
+          resolvedType = result;
+        }
+      }
+    }
+    return result;
+  }
+
+  private static Type extractType(Class<?> tokenClass) {
+    Type t = tokenClass.getGenericSuperclass();
     if (!(t instanceof ParameterizedType)) {
       throw new RuntimeException("Invalid TypeToken; must specify type parameters");
     }
@@ -42,14 +172,26 @@ public abstract class TypeToken<T> {
     return pt.getActualTypeArguments()[0];
   }
 
-  /** Gets type token for the given {@code Class} instance. */
+  /** Gets type token for the given {@code Class} instance. The token is created only once. */
+  @SuppressWarnings("unchecked")
   public static <T> TypeToken<T> get(Class<T> type) {
-    return new TypeToken<T>(type) {};
+    return (TypeToken<T>) CLASS_TOKENS.get(type);
   }
 
-  /** Gets type token for the given {@code Type} instance. */
+  /**
+   * Gets type token for the given {@code Type} instance. Equal types share the same token, for as
+   * long as it is in use; except types containing wildcards, which get a new token every time, so
+   * that the members resolved through unrelated tokens do not share the same capture.
+   */
   public static TypeToken<?> get(Type type) {
-    return new TypeToken<Object>(type) {};
+    if (type instanceof Class) {
+      return get((Class<?>) type);
+    }
+    TypeToken<?> token = new TypeToken<Object>(type) {};
+    if (GenericTypeReflector.capture(type) != type) {
+      return token;
+    }
+    return TYPE_TOKENS.intern(token);
   }
 
   @Override
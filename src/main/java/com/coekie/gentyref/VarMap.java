@@ -1,97 +1,190 @@
 package com.coekie.gentyref;
 
 import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.GenericDeclaration;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.lang.reflect.TypeVariable;
 import java.lang.reflect.WildcardType;
-import java.util.HashMap;
-import java.util.Map;
 
 /**
  * Mapping between type variables and actual parameters.
  *
+ * <p>A VarMap is immutable. It maps the type parameters of one class (or other generic
+ * declaration) by their position, and delegates to a parent VarMap (normally the one for the owner
+ * type) for other type variables. Classes have few type parameters, so finding the position of a
+ * variable by comparing names is cheaper than hashing type variables, whose equals and hashCode are
+ * not cheap either.
+ *
  * @author Wouter Coekaerts <wouter@coekaerts.be>
  */
 class VarMap {
-  private final Map<TypeVariable<?>, Type> map = new HashMap<TypeVariable<?>, Type>();
+  private static final TypeVariable<?>[] NO_VARIABLES = new TypeVariable<?>[0];
+
+  /** VarMap that doesn't map any type variable */
+  static final VarMap EMPTY = new VarMap(null, NO_VARIABLES, new Type[0], null);
+
+  /** The declaration of the variables in this frame; null if there are no variables */
+  private final GenericDeclaration declaration;
+  private final TypeVariable<?>[] variables;
+  private final Type[] values;
+  /** VarMap for the variables that are not in this frame; or null if there are none */
+  private final VarMap parent;
+  /** VarMap that is applied to the values, or null if they are used as they are */
+  private final VarMap then;
+
+  private VarMap(
+      GenericDeclaration declaration, TypeVariable<?>[] variables, Type[] values, VarMap parent) {
+    this.declaration = declaration;
+    this.variables = variables;
+    this.values = values;
+    this.parent = parent;
+    this.then = null;
+  }
 
-  /** Creates an empty VarMap */
-  VarMap() {}
+  /** Creates a VarMap that maps like <tt>map</tt>, and then maps the result using <tt>then</tt> */
+  private VarMap(VarMap map, VarMap then) {
+    this.declaration = map.declaration;
+    this.variables = map.variables;
+    this.values = map.values;
+    this.parent = map.parent;
+    this.then = then;
+  }
 
   /**
    * Creates a VarMap mapping the type parameters of the class used in <tt>type</tt> to their actual
-   * value.
+   * value, and the type parameters of its owner types to their value in the owner types.
    */
   VarMap(ParameterizedType type) {
-    // loop over the type and its generic owners
-    do {
-      Class<?> clazz = (Class<?>) type.getRawType();
-      Type[] arguments = type.getActualTypeArguments();
-      TypeVariable<?>[] typeParameters = clazz.getTypeParameters();
-
-      // since we're looping over two arrays in parallel, just to be sure check they have the same
-      // size
-      if (arguments.length != typeParameters.length) {
-        throw new IllegalStateException(
-            "The given type ["
-                + type
-                + "] is inconsistent: it has "
-                + arguments.length
-                + " arguments instead of "
-                + typeParameters.length);
-      }
+    Class<?> clazz = (Class<?>) type.getRawType();
+    Type[] arguments = ParameterizedTypeImpl.argumentsOf(type);
+    TypeVariable<?>[] typeParameters = GenericClassInfo.get(clazz).getTypeParameters();
 
-      for (int i = 0; i < arguments.length; i++) {
-        add(typeParameters[i], arguments[i]);
-      }
+    // since we're looping over two arrays in parallel, just to be sure check they have the same
+    // size
+    if (arguments.length != typeParameters.length) {
+      throw new IllegalStateException(
+          "The given type ["
+              + type
+              + "] is inconsistent: it has "
+              + arguments.length
+              + " arguments instead of "
+              + typeParameters.length);
+    }
 
-      Type owner = type.getOwnerType();
-      type = (owner instanceof ParameterizedType) ? (ParameterizedType) owner : null;
-    } while (type != null);
-  }
+    this.declaration = clazz;
+    this.variables = typeParameters;
+    this.values = arguments;
 
-  void add(TypeVariable<?> variable, Type value) {
-    map.put(variable, value);
+    // the owner types get their own VarMap
+    Type owner = type.getOwnerType();
+    this.parent =
+        (owner instanceof ParameterizedType) ? new VarMap((ParameterizedType) owner) : null;
+    this.then = null;
   }
 
-  void addAll(TypeVariable<?>[] variables, Type[] values) {
+  /**
+   * Creates a VarMap mapping the given variables to the given values. The variables must all be
+   * the type parameters of the same declaration, in the order they are declared.
+   */
+  VarMap(TypeVariable<?>[] variables, Type[] values) {
     assert variables.length == values.length;
-    for (int i = 0; i < variables.length; i++) {
-      map.put(variables[i], values[i]);
+    this.declaration = variables.length == 0 ? null : variables[0].getGenericDeclaration();
+    this.variables = variables;
+    this.values = values;
+    this.parent = null;
+    this.then = null;
+  }
+
+  /**
+   * Returns the composition of this VarMap with <tt>then</tt>: the VarMap that maps a type variable
+   * to its value in this VarMap, mapped with <tt>then</tt>. Nothing is mapped until the returned
+   * VarMap is used, and then only the values of the variables that are actually used.
+   *
+   * <p>For example, if <tt>this</tt> maps the type variable of <tt>List</tt> to the type variable
+   * <tt>T</tt> of <tt>class MyList&lt;T&gt; implements List&lt;T&gt;</tt>, and <tt>then</tt> maps
+   * <tt>T</tt> to <tt>String</tt>, then the result maps the type variable of List to String.
+   */
+  VarMap andThen(VarMap then) {
+    return new VarMap(this, this.then == null ? then : this.then.andThen(then));
+  }
+
+  /**
+   * Returns a VarMap that maps the given type parameters of a generic method or constructor to
+   * themselves, and all other type variables like this VarMap does.
+   */
+  VarMap keeping(TypeVariable<?>[] variables) {
+    if (variables.length == 0) {
+      return this;
     }
+    return new VarMap(variables[0].getGenericDeclaration(), variables, variables, this);
   }
 
-  VarMap(TypeVariable<?>[] variables, Type[] values) {
-    addAll(variables, values);
+  /** Returns the value of the given type variable. */
+  private Type get(TypeVariable<?> tv) {
+    GenericDeclaration tvDeclaration = tv.getGenericDeclaration();
+    for (VarMap frame = this; frame != null; frame = frame.parent) {
+      if (frame != this && frame.then != null) {
+        // a parent with its own composition, see keeping(TypeVariable[])
+        return frame.get(tv);
+      }
+      // equals rather than ==, because methods and constructors are copied by reflection
+      if (tvDeclaration.equals(frame.declaration)) {
+        String name = tv.getName();
+        TypeVariable<?>[] frameVariables = frame.variables;
+        for (int i = 0; i < frameVariables.length; i++) {
+          if (frameVariables[i].getName().equals(name)) {
+            return then == null ? frame.values[i] : then.map(frame.values[i]);
+          }
+        }
+      }
+    }
+    throw new UnresolvedTypeVariableException(tv);
   }
 
+  /**
+   * Substitutes the type variables in the given type. Parts of the type that don't contain any type
+   * variable are not copied: if nothing changed, <tt>type</tt> itself is returned.
+   */
   Type map(Type type) {
     if (type instanceof Class) {
       return type;
     } else if (type instanceof TypeVariable) {
-      TypeVariable<?> tv = (TypeVariable<?>) type;
-      if (!map.containsKey(type)) {
-        throw new UnresolvedTypeVariableException(tv);
-      }
-      return map.get(type);
+      return get((TypeVariable<?>) type);
     } else if (type instanceof ParameterizedType) {
       ParameterizedType pType = (ParameterizedType) type;
-      return new ParameterizedTypeImpl(
-          (Class<?>) pType.getRawType(),
-          map(pType.getActualTypeArguments()),
-          pType.getOwnerType() == null ? pType.getOwnerType() : map(pType.getOwnerType()));
+      Type[] arguments = ParameterizedTypeImpl.argumentsOf(pType);
+      Type[] mappedArguments = mapIfChanged(arguments);
+      Type ownerType = pType.getOwnerType();
+      Type mappedOwnerType = ownerType == null ? null : map(ownerType);
+      if (mappedArguments == arguments && mappedOwnerType == ownerType) {
+        return type;
+      }
+      return ParameterizedTypeImpl.createParameterizedType(
+          (Class<?>) pType.getRawType(), mappedArguments, mappedOwnerType);
     } else if (type instanceof WildcardType) {
       WildcardType wType = (WildcardType) type;
-      return new WildcardTypeImpl(map(wType.getUpperBounds()), map(wType.getLowerBounds()));
+      Type[] upperBounds = WildcardTypeImpl.upperBoundsOf(wType);
+      Type[] lowerBounds = WildcardTypeImpl.lowerBoundsOf(wType);
+      Type[] mappedUpperBounds = mapIfChanged(upperBounds);
+      Type[] mappedLowerBounds = mapIfChanged(lowerBounds);
+      if (mappedUpperBounds == upperBounds && mappedLowerBounds == lowerBounds) {
+        return type;
+      }
+      return WildcardTypeImpl.createWildcardType(mappedUpperBounds, mappedLowerBounds);
     } else if (type instanceof GenericArrayType) {
-      return GenericArrayTypeImpl.createArrayType(
-          map(((GenericArrayType) type).getGenericComponentType()));
+      Type componentType = ((GenericArrayType) type).getGenericComponentType();
+      Type mappedComponentType = map(componentType);
+      if (mappedComponentType == componentType) {
+        return type;
+      }
+      return GenericArrayTypeImpl.createArrayType(mappedComponentType);
     } else {
       throw new RuntimeException("not implemented: mapping " + type.getClass() + " (" + type + ")");
     }
   }
 
+  /** Substitutes the type variables in the given types. Always returns a new array. */
   Type[] map(Type[] types) {
     Type[] result = new Type[types.length];
     for (int i = 0; i < types.length; i++) {
@@ -99,4 +192,22 @@ class VarMap {
     }
     return result;
   }
+
+  /**
+   * Substitutes the type variables in the given types, returning <tt>types</tt> itself if none of
+   * them changed. The returned array must not be modified.
+   */
+  private Type[] mapIfChanged(Type[] types) {
+    Type[] result = types;
+    for (int i = 0; i < types.length; i++) {
+      Type mapped = map(types[i]);
+      if (mapped != types[i]) {
+        if (result == types) {
+          result = types.clone();
+        }
+        result[i] = mapped;
+      }
+    }
+    return result;
+  }
 }
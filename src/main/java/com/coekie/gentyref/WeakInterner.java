@@ -0,0 +1,43 @@
+package com.coekie.gentyref;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Table of canonical instances: {@link #intern(Object)} returns the same instance for all equal
+ * objects. Instances are only held weakly, so they are removed when they are no longer used.
+ *
+ * <p>The table is split into stripes, each with its own lock, to keep contention low.
+ */
+class WeakInterner<T> {
+  private static final int STRIPES = 16;
+
+  private final Map<T, WeakReference<T>>[] stripes;
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  WeakInterner() {
+    stripes = new Map[STRIPES];
+    for (int i = 0; i < STRIPES; i++) {
+      stripes[i] = new WeakHashMap<T, WeakReference<T>>();
+    }
+  }
+
+  /**
+   * Returns the canonical instance equal to the given one. If there is none yet, the given instance
+   * becomes the canonical one.
+   */
+  T intern(T value) {
+    int hash = value.hashCode();
+    Map<T, WeakReference<T>> stripe = stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+    synchronized (stripe) {
+      WeakReference<T> ref = stripe.get(value);
+      T canonical = ref == null ? null : ref.get();
+      if (canonical == null) {
+        stripe.put(value, new WeakReference<T>(value));
+        canonical = value;
+      }
+      return canonical;
+    }
+  }
+}
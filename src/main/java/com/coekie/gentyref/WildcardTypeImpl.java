@@ -5,9 +5,19 @@ import java.lang.reflect.WildcardType;
 import java.util.Arrays;
 
 class WildcardTypeImpl implements WildcardType {
+  /** The unbound wildcard: "?", which is the same as "? extends Object" */
+  static final WildcardTypeImpl UNBOUND =
+      new WildcardTypeImpl(new Type[] {Object.class}, new Type[] {});
+
   private final Type[] upperBounds;
   private final Type[] lowerBounds;
+  private final int hashCode;
 
+  /**
+   * Creates a wildcard. The bounds are not copied, because the hash code is computed from them up
+   * front: the caller must pass arrays that are never modified afterwards, either new ones or ones
+   * owned by another immutable type.
+   */
   public WildcardTypeImpl(Type[] upperBounds, Type[] lowerBounds) {
     if (upperBounds.length == 0)
       throw new IllegalArgumentException(
@@ -15,6 +25,19 @@ class WildcardTypeImpl implements WildcardType {
 							+ " be Object");
     this.upperBounds = upperBounds;
     this.lowerBounds = lowerBounds;
+    this.hashCode = Arrays.hashCode(lowerBounds) ^ Arrays.hashCode(upperBounds);
+  }
+
+  /**
+   * Returns a WildcardType with the given bounds. This returns {@link #UNBOUND} for the unbound
+   * wildcard, and the canonical instance for other wildcards if interning is enabled. Like the
+   * constructor, this does not copy the bounds.
+   */
+  static WildcardType createWildcardType(Type[] upperBounds, Type[] lowerBounds) {
+    if (lowerBounds.length == 0 && upperBounds.length == 1 && upperBounds[0] == Object.class) {
+      return UNBOUND;
+    }
+    return GenericTypeReflector.intern(new WildcardTypeImpl(upperBounds, lowerBounds));
   }
 
   public Type[] getUpperBounds() {
@@ -25,17 +48,41 @@ class WildcardTypeImpl implements WildcardType {
     return lowerBounds.clone();
   }
 
+  /**
+   * Returns the upper bounds of the given wildcard, like {@link WildcardType#getUpperBounds()}, but
+   * without copying them if <tt>type</tt> is a WildcardTypeImpl. The returned array must not be
+   * modified.
+   */
+  static Type[] upperBoundsOf(WildcardType type) {
+    return type instanceof WildcardTypeImpl
+        ? ((WildcardTypeImpl) type).upperBounds
+        : type.getUpperBounds();
+  }
+
+  /**
+   * Returns the lower bounds of the given wildcard, like {@link WildcardType#getLowerBounds()}, but
+   * without copying them if <tt>type</tt> is a WildcardTypeImpl. The returned array must not be
+   * modified.
+   */
+  static Type[] lowerBoundsOf(WildcardType type) {
+    return type instanceof WildcardTypeImpl
+        ? ((WildcardTypeImpl) type).lowerBounds
+        : type.getLowerBounds();
+  }
+
   @Override
   public boolean equals(Object obj) {
+    if (this == obj) return true;
     if (!(obj instanceof WildcardType)) return false;
+    if (obj instanceof WildcardTypeImpl && hashCode != obj.hashCode()) return false;
     WildcardType other = (WildcardType) obj;
-    return Arrays.equals(lowerBounds, other.getLowerBounds())
-        && Arrays.equals(upperBounds, other.getUpperBounds());
+    return Arrays.equals(lowerBounds, lowerBoundsOf(other))
+        && Arrays.equals(upperBounds, upperBoundsOf(other));
   }
 
   @Override
   public int hashCode() {
-    return Arrays.hashCode(lowerBounds) ^ Arrays.hashCode(upperBounds);
+    return hashCode;
   }
 
   @Override
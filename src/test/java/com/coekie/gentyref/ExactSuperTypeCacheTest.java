@@ -0,0 +1,25 @@
+package com.coekie.gentyref;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+
+/**
+ * Runs the tests of AbstractGenericsReflectorTest with the cache of {@link
+ * GenericTypeReflector#getExactSuperType(java.lang.reflect.Type, Class)} enabled. The cache is
+ * shared by all tests, so that later tests get answers cached by earlier ones.
+ */
+public class ExactSuperTypeCacheTest extends AbstractGenericsReflectorTest {
+  public ExactSuperTypeCacheTest() {
+    super(new GenTyRefReflectionStrategy());
+  }
+
+  @BeforeClass
+  public static void enableCache() {
+    GenericTypeReflector.setExactSuperTypeCacheSize(1000);
+  }
+
+  @AfterClass
+  public static void disableCache() {
+    GenericTypeReflector.setExactSuperTypeCacheSize(0);
+  }
+}
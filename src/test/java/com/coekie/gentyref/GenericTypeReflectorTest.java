@@ -1,6 +1,11 @@
 package com.coekie.gentyref;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.awt.Dimension;
@@ -12,6 +17,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import org.junit.Test;
 
 /**
@@ -32,6 +38,103 @@ public class GenericTypeReflectorTest extends AbstractGenericsReflectorTest {
             StringList.class, Collection.class.getTypeParameters()[0]));
   }
 
+  interface Source<T> {}
+
+  interface StringSource extends Source<String> {}
+
+  interface Pipe<T> extends Source<T> {}
+
+  abstract class StringPipe implements Pipe<String>, StringSource {}
+
+  /** An ancestor reached through multiple paths */
+  @Test
+  public void testGetExactSuperTypeDiamond() {
+    assertEquals(
+        new TypeToken<Source<String>>() {}.getType(),
+        GenericTypeReflector.getExactSuperType(StringPipe.class, Source.class));
+    assertEquals(
+        new TypeToken<Source<Integer>>() {}.getType(),
+        GenericTypeReflector.getExactSuperType(
+            new TypeToken<Pipe<Integer>>() {}.getType(), Source.class));
+    assertEquals(null, GenericTypeReflector.getExactSuperType(StringPipe.class, List.class));
+  }
+
+  @Test
+  public void testGetExactFieldTypes() throws NoSuchFieldException {
+    class Base<T> {
+      @SuppressWarnings("unused")
+      T t;
+    }
+    class Sub<U> extends Base<List<U>> {
+      @SuppressWarnings("unused")
+      U u;
+    }
+    Field t = Base.class.getDeclaredField("t");
+    Field u = Sub.class.getDeclaredField("u");
+    Type subOfString = new TypeToken<Sub<String>>() {}.getType();
+    assertArrayEquals(
+        new Type[] {new TypeToken<List<String>>() {}.getType(), String.class, String.class},
+        GenericTypeReflector.getExactFieldTypes(new Field[] {t, u, u}, subOfString));
+    try {
+      GenericTypeReflector.getExactFieldTypes(new Field[] {t, u}, String.class);
+      fail("expected exception");
+    } catch (IllegalArgumentException e) { // expected
+    }
+  }
+
+  @Test
+  public void testGetExactReturnAndParameterTypes() throws NoSuchMethodException {
+    Method get = List.class.getMethod("get", int.class);
+    Method set = List.class.getMethod("set", int.class, Object.class);
+    Method size = Collection.class.getMethod("size");
+    Type arrayListOfString = new TypeToken<ArrayList<String>>() {}.getType();
+    assertArrayEquals(
+        new Type[] {String.class, String.class, int.class},
+        GenericTypeReflector.getExactReturnTypes(new Method[] {get, set, size}, arrayListOfString));
+    Type[][] parameterTypes =
+        GenericTypeReflector.getExactParameterTypes(
+            new Method[] {get, set, size}, arrayListOfString);
+    assertArrayEquals(new Type[] {int.class}, parameterTypes[0]);
+    assertArrayEquals(new Type[] {int.class, String.class}, parameterTypes[1]);
+    assertArrayEquals(new Type[] {}, parameterTypes[2]);
+  }
+
+  @Test
+  public void testGetExactSuperTypeCache() {
+    GenericTypeReflector.setExactSuperTypeCacheSize(2);
+    try {
+      Type arrayListOfString = new TypeToken<ArrayList<String>>() {}.getType();
+      Type collectionOfString = new TypeToken<Collection<String>>() {}.getType();
+
+      Type result = GenericTypeReflector.getExactSuperType(arrayListOfString, Collection.class);
+      assertEquals(collectionOfString, result);
+      assertSame(
+          result, GenericTypeReflector.getExactSuperType(arrayListOfString, Collection.class));
+      assertEquals(null, GenericTypeReflector.getExactSuperType(arrayListOfString, Number.class));
+      assertEquals(null, GenericTypeReflector.getExactSuperType(arrayListOfString, Number.class));
+
+      CacheStats stats = GenericTypeReflector.getExactSuperTypeCacheStats();
+      assertEquals(2, stats.getHitCount());
+      assertEquals(2, stats.getMissCount());
+      assertEquals(1, stats.getSize());
+
+      // fill up the cache, so that arrayListOfString gets evicted
+      GenericTypeReflector.getExactSuperType(collectionOfString, Iterable.class);
+      GenericTypeReflector.getExactSuperType(
+          new TypeToken<List<String>>() {}.getType(), Iterable.class);
+      stats = GenericTypeReflector.getExactSuperTypeCacheStats();
+      assertEquals(1, stats.getEvictionCount());
+      assertEquals(2, stats.getSize());
+
+      GenericTypeReflector.setExactSuperTypeCacheSize(0);
+      assertEquals(
+          result, GenericTypeReflector.getExactSuperType(arrayListOfString, Collection.class));
+      assertEquals(0, GenericTypeReflector.getExactSuperTypeCacheStats().getMissCount());
+    } finally {
+      GenericTypeReflector.setExactSuperTypeCacheSize(0);
+    }
+  }
+
   @Test
   public void testGetUpperBoundClassAndInterfaces() {
     class Foo<A extends Number & Iterable<A>, B extends A> {}
@@ -81,4 +184,94 @@ public class GenericTypeReflectorTest extends AbstractGenericsReflectorTest {
     assertEquals(int.class, result[0]);
     assertEquals(String.class, result[1]);
   }
+
+  @Test
+  public void testGetExactFieldTypeWithoutTypeVariablesIsShared() throws NoSuchFieldException {
+    class Holder<T> {
+      @SuppressWarnings("unused")
+      Map<String, List<Integer>> concrete;
+    }
+    Field concrete = Holder.class.getDeclaredField("concrete");
+    assertSame(
+        concrete.getGenericType(),
+        GenericTypeReflector.getExactFieldType(
+            concrete, new TypeToken<Holder<String>>() {}.getType()));
+  }
+
+  @Test
+  public void testErasedUpperBounds() {
+    class Bounded<T extends Number & Comparable<T>> {}
+    TypeVariable<?> t = Bounded.class.getTypeParameters()[0];
+    assertEquals(t.getBounds()[1], GenericTypeReflector.getExactSuperType(t, Comparable.class));
+    assertNull(GenericTypeReflector.getExactSuperType(t, Collection.class));
+    assertTrue(GenericTypeReflector.isSuperType(Comparable.class, t));
+    assertFalse(GenericTypeReflector.isSuperType(Collection.class, t));
+    assertFalse(
+        GenericTypeReflector.isSuperType(
+            Collection.class, new TypeToken<Map<String, ?>>() {}.getType()));
+  }
+
+  /** Erased upper bounds of a type variable bounded by another type variable of the same class */
+  @Test
+  public void testErasedUpperBoundsOfVariableBoundedByVariable() {
+    class Foo<A extends Number & Iterable<A>, B extends A> {}
+    TypeVariable<?> b = Foo.class.getTypeParameters()[1];
+    assertTrue(GenericTypeReflector.isSuperType(Number.class, b));
+    assertEquals(Number.class, GenericTypeReflector.getExactSuperType(b, Number.class));
+    assertFalse(GenericTypeReflector.isSuperType(Collection.class, b));
+  }
+
+  /**
+   * T[] has the same erasure as Number[], but that must not stop the search from going through
+   * Number[] itself.
+   */
+  @Test
+  public void testGenericArraySuperTypeThroughBoundArray() {
+    class Foo<T extends Number> {}
+    Type tArray = GenericArrayTypeImpl.createArrayType(Foo.class.getTypeParameters()[0]);
+    assertEquals(Object[].class, GenericTypeReflector.getExactSuperType(tArray, Object[].class));
+    assertTrue(GenericTypeReflector.isSuperType(Object[].class, tArray));
+  }
+
+  static class Outer<T> {
+    class Inner<U> {}
+  }
+
+  /** Types with a capture in their owner type are not cached either */
+  @Test
+  public void testGetExactSuperTypeCacheSkipsCapturedOwner() {
+    GenericTypeReflector.setExactSuperTypeCacheSize(10);
+    try {
+      Type inner = new TypeToken<Outer<?>.Inner<String>>() {}.getType();
+      for (int i = 0; i < 5; i++) {
+        GenericTypeReflector.getExactSuperType(GenericTypeReflector.capture(inner), Object.class);
+      }
+      CacheStats stats = GenericTypeReflector.getExactSuperTypeCacheStats();
+      assertEquals(0, stats.getMissCount());
+      assertEquals(0, stats.getSize());
+    } finally {
+      GenericTypeReflector.setExactSuperTypeCacheSize(0);
+    }
+  }
+
+  /** Types with a capture nested deeper in their arguments, or in an array, are not cached */
+  @Test
+  public void testGetExactSuperTypeCacheSkipsNestedCapture() throws NoSuchMethodException {
+    GenericTypeReflector.setExactSuperTypeCacheSize(10);
+    try {
+      Type entrySet =
+          GenericTypeReflector.getExactReturnType(
+              Map.class.getMethod("entrySet"), new TypeToken<Map<?, ?>>() {}.getType());
+      Type entrySetArray = TypeFactory.arrayOf(entrySet);
+      for (int i = 0; i < 5; i++) {
+        GenericTypeReflector.getExactSuperType(entrySet, Collection.class);
+        GenericTypeReflector.getExactSuperType(entrySetArray, Object[].class);
+      }
+      CacheStats stats = GenericTypeReflector.getExactSuperTypeCacheStats();
+      assertEquals(0, stats.getMissCount());
+      assertEquals(0, stats.getSize());
+    } finally {
+      GenericTypeReflector.setExactSuperTypeCacheSize(0);
+    }
+  }
 }
@@ -0,0 +1,202 @@
+package com.coekie.gentyref;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class ResolvedTypeTest {
+  static class Base<T> {
+    T value;
+    List<T> values;
+
+    T getValue() {
+      return value;
+    }
+
+    <V> Map<T, V> toMap(V v) {
+      return null;
+    }
+  }
+
+  static class Sub<U> extends Base<List<U>> {
+    U extra;
+
+    Sub(U extra, List<? extends U> more) {}
+
+    void put(int index, U u) {}
+  }
+
+  private static final Type SUB_OF_STRING = new TypeToken<Sub<String>>() {}.getType();
+
+  @Test
+  public void testFieldTypes() throws NoSuchFieldException {
+    ResolvedType resolved = ResolvedType.get(SUB_OF_STRING);
+    assertEquals(
+        new TypeToken<List<String>>() {}.getType(),
+        resolved.getExactFieldType(Base.class.getDeclaredField("value")));
+    assertEquals(String.class, resolved.getExactFieldType(Sub.class.getDeclaredField("extra")));
+  }
+
+  @Test
+  public void testGetExactFieldTypes() throws NoSuchFieldException {
+    Map<Field, Type> fieldTypes = ResolvedType.get(SUB_OF_STRING).getExactFieldTypes();
+    assertEquals(
+        Arrays.asList(
+            Sub.class.getDeclaredField("extra"),
+            Base.class.getDeclaredField("value"),
+            Base.class.getDeclaredField("values")),
+        new ArrayList<Field>(fieldTypes.keySet()));
+    assertEquals(
+        new TypeToken<List<List<String>>>() {}.getType(),
+        fieldTypes.get(Base.class.getDeclaredField("values")));
+  }
+
+  @Test
+  public void testMethodTypes() throws NoSuchMethodException {
+    ResolvedType resolved = ResolvedType.get(SUB_OF_STRING);
+    assertEquals(
+        new TypeToken<List<String>>() {}.getType(),
+        resolved.getExactReturnType(Base.class.getDeclaredMethod("getValue")));
+    assertArrayEquals(
+        new Type[] {int.class, String.class},
+        resolved.getExactParameterTypes(
+            Sub.class.getDeclaredMethod("put", int.class, Object.class)));
+  }
+
+  @Test
+  public void testConstructorTypes() throws NoSuchMethodException {
+    assertArrayEquals(
+        new Type[] {String.class, new TypeToken<List<? extends String>>() {}.getType()},
+        ResolvedType.get(SUB_OF_STRING)
+            .getExactParameterTypes(Sub.class.getDeclaredConstructor(Object.class, List.class)));
+    try {
+      ResolvedType.get(SUB_OF_STRING).getExactParameterTypes(Base.class.getDeclaredConstructor());
+      fail("expected exception");
+    } catch (IllegalArgumentException e) { // expected
+    }
+  }
+
+  @Test
+  public void testRaw() throws NoSuchFieldException {
+    Field value = Base.class.getDeclaredField("value");
+    assertEquals(Object.class, ResolvedType.get(Sub.class).getExactFieldType(value));
+  }
+
+  @Test
+  public void testNotAMember() throws NoSuchFieldException {
+    try {
+      ResolvedType.get(String.class).getExactFieldType(Base.class.getDeclaredField("value"));
+      fail("expected exception");
+    } catch (IllegalArgumentException e) { // expected
+    }
+  }
+
+  /** Members are resolved against one capture of the type, so they use the same captures */
+  @Test
+  public void testSharedCapture() throws NoSuchFieldException {
+    Type subOfWildcard = new TypeToken<Sub<?>>() {}.getType();
+    ResolvedType resolved = ResolvedType.get(subOfWildcard);
+
+    Type extra = resolved.getExactFieldType(Sub.class.getDeclaredField("extra"));
+    assertTrue(extra instanceof CaptureType);
+    assertEquals(extra, resolved.getExactFieldType(Sub.class.getDeclaredField("extra")));
+    assertEquals(
+        TypeFactory.parameterizedClass(List.class, extra),
+        resolved.getExactFieldType(Base.class.getDeclaredField("value")));
+  }
+
+  @Test
+  public void testGetExactReturnTypes() throws NoSuchMethodException {
+    Map<Method, Type> returnTypes = ResolvedType.get(SUB_OF_STRING).getExactReturnTypes();
+    Method getValue = Base.class.getDeclaredMethod("getValue");
+    assertEquals(new TypeToken<List<String>>() {}.getType(), returnTypes.get(getValue));
+    assertEquals(String.class, returnTypes.get(Object.class.getDeclaredMethod("toString")));
+    List<Method> methods = new ArrayList<Method>(returnTypes.keySet());
+    // methods of the class itself come first
+    Method put = Sub.class.getDeclaredMethod("put", int.class, Object.class);
+    assertTrue(methods.indexOf(put) < methods.indexOf(getValue));
+
+    // the type parameter of a generic method is kept, the one of the class is resolved
+    Method toMap = Base.class.getDeclaredMethod("toMap", Object.class);
+    Type v = toMap.getTypeParameters()[0];
+    assertEquals(
+        TypeFactory.parameterizedClass(Map.class, new TypeToken<List<String>>() {}.getType(), v),
+        returnTypes.get(toMap));
+  }
+
+  @Test
+  public void testGetExactMethodParameterTypes() throws NoSuchMethodException {
+    Map<Method, Type[]> parameterTypes =
+        ResolvedType.get(SUB_OF_STRING).getExactMethodParameterTypes();
+    assertArrayEquals(
+        new Type[] {int.class, String.class},
+        parameterTypes.get(Sub.class.getDeclaredMethod("put", int.class, Object.class)));
+  }
+
+  @Test
+  public void testGetExactConstructorParameterTypes() throws NoSuchMethodException {
+    Map<Constructor<?>, Type[]> parameterTypes =
+        ResolvedType.get(SUB_OF_STRING).getExactConstructorParameterTypes();
+    assertEquals(
+        Arrays.<Constructor<?>>asList(Sub.class.getDeclaredConstructor(Object.class, List.class)),
+        new ArrayList<Constructor<?>>(parameterTypes.keySet()));
+    assertArrayEquals(
+        new Type[] {String.class, new TypeToken<List<? extends String>>() {}.getType()},
+        parameterTypes.values().iterator().next());
+  }
+
+  /**
+   * Methods inherited from interfaces are included, even for an interface itself. The type
+   * parameters of generic methods are left alone.
+   */
+  @Test
+  public void testGetExactReturnTypesOfInterface() throws NoSuchMethodException {
+    ResolvedType resolved = ResolvedType.get(new TypeToken<List<String>>() {}.getType());
+    Map<Method, Type> returnTypes = resolved.getExactReturnTypes();
+    assertEquals(
+        new TypeToken<Iterator<String>>() {}.getType(),
+        returnTypes.get(Iterable.class.getDeclaredMethod("iterator")));
+
+    Method toArray = Collection.class.getDeclaredMethod("toArray", Object[].class);
+    Type t = toArray.getTypeParameters()[0];
+    assertEquals(TypeFactory.arrayOf(t), returnTypes.get(toArray));
+    assertArrayEquals(
+        new Type[] {TypeFactory.arrayOf(t)}, resolved.getExactMethodParameterTypes().get(toArray));
+  }
+
+  @Test
+  public void testCache() {
+    ResolvedType.setCacheSize(10);
+    try {
+      ResolvedType resolved = ResolvedType.get(SUB_OF_STRING);
+      assertSame(resolved, ResolvedType.get(new TypeToken<Sub<String>>() {}.getType()));
+
+      // each caller gets its own capture of a type with wildcards
+      Type subOfWildcard = new TypeToken<Sub<?>>() {}.getType();
+      assertNotSame(ResolvedType.get(subOfWildcard), ResolvedType.get(subOfWildcard));
+
+      CacheStats stats = ResolvedType.getCacheStats();
+      assertEquals(1, stats.getHitCount());
+      assertEquals(3, stats.getMissCount());
+      assertEquals(1, stats.getSize());
+    } finally {
+      ResolvedType.setCacheSize(0);
+    }
+    assertNotSame(ResolvedType.get(SUB_OF_STRING), ResolvedType.get(SUB_OF_STRING));
+  }
+}
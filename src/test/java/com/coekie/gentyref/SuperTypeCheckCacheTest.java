@@ -0,0 +1,25 @@
+package com.coekie.gentyref;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+
+/**
+ * Runs the tests of AbstractGenericsReflectorTest with the cache of {@link
+ * GenericTypeReflector#isSuperType(java.lang.reflect.Type, java.lang.reflect.Type)} enabled. The
+ * cache is shared by all tests, so that later tests get answers cached by earlier ones.
+ */
+public class SuperTypeCheckCacheTest extends AbstractGenericsReflectorTest {
+  public SuperTypeCheckCacheTest() {
+    super(new GenTyRefReflectionStrategy());
+  }
+
+  @BeforeClass
+  public static void enableCache() {
+    GenericTypeReflector.setSuperTypeCheckCacheSize(1000);
+  }
+
+  @AfterClass
+  public static void disableCache() {
+    GenericTypeReflector.setSuperTypeCheckCacheSize(0);
+  }
+}
@@ -1,8 +1,11 @@
 package com.coekie.gentyref;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
+import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
@@ -24,6 +27,7 @@ public class TypeTest {
     Type expected = expectedToken.getType();
     assertEquals(expected, type);
     assertEquals(type, expected);
+    assertEquals(expected.hashCode(), type.hashCode());
     assertEquals(toString, type.toString());
     // if (!toString.equals(expected.toString()))
     //   System.err.println(
@@ -133,4 +137,69 @@ public class TypeTest {
         "java.util.List<capture of ?>",
         GenericTypeReflector.capture(new TypeToken<List<?>>() {}.getType()).toString());
   }
+
+  static class SelfBounded<T extends Comparable<T>> {}
+
+  @Test
+  public void testCaptureBoundsReferToCapture() {
+    ParameterizedType captured =
+        (ParameterizedType)
+            GenericTypeReflector.capture(new TypeToken<SelfBounded<?>>() {}.getType());
+    CaptureType capture = (CaptureType) captured.getActualTypeArguments()[0];
+    assertEquals(
+        TypeFactory.parameterizedClass(Comparable.class, capture), capture.getUpperBounds()[0]);
+  }
+
+  /** Capturing a type without wildcards is a no-op */
+  @Test
+  public void testCaptureWithoutWildcards() {
+    Type type =
+        new TypeToken<TypeTest.InnerWithParam<String>.InnerInnerWithParam<Integer>>() {}.getType();
+    assertSame(type, GenericTypeReflector.capture(type));
+  }
+
+  @Test
+  public void testDefensiveCopies() {
+    ParameterizedType listOfString =
+        (ParameterizedType) TypeFactory.parameterizedClass(List.class, String.class);
+    listOfString.getActualTypeArguments()[0] = Integer.class;
+    assertEquals(String.class, listOfString.getActualTypeArguments()[0]);
+
+    WildcardType wildcard = TypeFactory.wildcardSuper(String.class);
+    wildcard.getLowerBounds()[0] = Integer.class;
+    wildcard.getUpperBounds()[0] = Integer.class;
+    assertEquals(String.class, wildcard.getLowerBounds()[0]);
+    assertEquals(Object.class, wildcard.getUpperBounds()[0]);
+  }
+
+  @Test
+  public void testUnboundWildcardSingleton() {
+    assertSame(TypeFactory.unboundWildcard(), TypeFactory.wildcardExtends(Object.class));
+    assertSame(
+        TypeFactory.unboundWildcard(),
+        ((ParameterizedType) GenericTypeReflector.addWildcardParameters(List.class))
+            .getActualTypeArguments()[0]);
+  }
+
+  @Test
+  public void testInterning() {
+    GenericTypeReflector.setInterningEnabled(true);
+    try {
+      assertSame(
+          TypeFactory.parameterizedClass(List.class, String.class),
+          TypeFactory.parameterizedClass(List.class, String.class));
+      assertSame(
+          TypeFactory.wildcardSuper(Number.class), TypeFactory.wildcardSuper(Number.class));
+      assertSame(
+          TypeFactory.arrayOf(new TypeToken<List<String>>() {}.getType()),
+          TypeFactory.arrayOf(TypeFactory.parameterizedClass(List.class, String.class)));
+      // types created while mapping type variables are interned too
+      assertSame(
+          TypeFactory.parameterizedClass(Iterable.class, TypeTest.class),
+          GenericTypeReflector.getExactSuperType(
+              new TypeToken<List<TypeTest>>() {}.getType(), Iterable.class));
+    } finally {
+      GenericTypeReflector.setInterningEnabled(false);
+    }
+  }
 }
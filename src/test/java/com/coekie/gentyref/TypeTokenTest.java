@@ -0,0 +1,96 @@
+package com.coekie.gentyref;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.List;
+import org.junit.Test;
+
+public class TypeTokenTest {
+  private static Type listOfStringType() {
+    return new TypeToken<List<String>>() {}.getType();
+  }
+
+  /** The type is only extracted once for every subclass of TypeToken */
+  @Test
+  public void testTypeExtractedOnce() {
+    assertSame(listOfStringType(), listOfStringType());
+  }
+
+  @Test
+  public void testGetClass() {
+    assertEquals(String.class, TypeToken.get(String.class).getType());
+    assertSame(TypeToken.get(String.class), TypeToken.get(String.class));
+    assertSame(TypeToken.get(String.class), TypeToken.get((Type) String.class));
+  }
+
+  @Test
+  public void testGetType() {
+    Type listOfString = listOfStringType();
+    TypeToken<?> token = TypeToken.get(listOfString);
+    assertEquals(new TypeToken<List<String>>() {}, token);
+    assertSame(token, TypeToken.get(TypeFactory.parameterizedClass(List.class, String.class)));
+  }
+
+  static class Base<T> {
+    public T field;
+
+    public T get(List<T> list) {
+      return null;
+    }
+  }
+
+  static class StringBase extends Base<String> {}
+
+  @Test
+  public void testResolveMembers() throws NoSuchFieldException, NoSuchMethodException {
+    TypeToken<StringBase> token = TypeToken.get(StringBase.class);
+    Field field = Base.class.getField("field");
+    Method method = Base.class.getMethod("get", List.class);
+    assertEquals(String.class, token.resolveField(field));
+    assertEquals(String.class, token.resolveReturnType(method));
+    assertArrayEquals(
+        new Type[] {new TypeToken<List<String>>() {}.getType()},
+        token.resolveParameterTypes(method));
+  }
+
+  @Test
+  public void testGetSupertype() {
+    TypeToken<?> token = new TypeToken<StringBase>() {};
+    Type baseOfString = new TypeToken<Base<String>>() {}.getType();
+    assertEquals(baseOfString, token.getSupertype(Base.class));
+    assertSame(token.getSupertype(Base.class), token.getSupertype(Base.class));
+    assertNull(token.getSupertype(List.class));
+    assertNull(token.getSupertype(List.class));
+  }
+
+  @Test
+  public void testIsSupertypeOf() {
+    TypeToken<?> baseOfString = new TypeToken<Base<String>>() {};
+    assertTrue(baseOfString.isSupertypeOf(StringBase.class));
+    assertTrue(baseOfString.isSupertypeOf(TypeToken.get(StringBase.class)));
+    assertFalse(baseOfString.isSupertypeOf(new TypeToken<Base<Integer>>() {}));
+  }
+
+  /** Unrelated tokens for a type with wildcards don't share a capture */
+  @Test
+  public void testGetTypeWithWildcard() throws NoSuchFieldException {
+    Type baseOfWildcard = new TypeToken<Base<?>>() {}.getType();
+    Field field = Base.class.getField("field");
+    TypeToken<?> token = TypeToken.get(baseOfWildcard);
+    assertEquals(token, TypeToken.get(baseOfWildcard));
+    assertNotSame(token, TypeToken.get(baseOfWildcard));
+    assertNotEquals(token.resolveField(field), TypeToken.get(baseOfWildcard).resolveField(field));
+    // but one token always uses the same capture
+    assertSame(token.resolveField(field), token.resolveField(field));
+  }
+}
@@ -11,6 +11,7 @@ import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import com.coekie.gentyref.CacheStats;
 import com.coekie.gentyref.TypeArgumentNotInBoundException;
 import com.coekie.gentyref.TypeFactory;
 import com.coekie.gentyref.TypeToken;
@@ -560,4 +561,28 @@ public class TypeFactoryTest {
         new TypeToken<List<String>[]>() {}.getType(),
         TypeFactory.arrayOf(parameterizedClass(List.class, String.class)));
   }
+
+  @Test
+  public void testValidatedTypeCache() {
+    TypeFactory.setValidatedTypeCacheSize(10);
+    try {
+      Type[] arguments = {String.class};
+      Type listOfString = parameterizedClass(List.class, arguments);
+      assertSame(listOfString, parameterizedClass(List.class, String.class));
+
+      // changing the array afterwards doesn't affect the cache
+      arguments[0] = Integer.class;
+      assertEquals(
+          new TypeToken<List<Integer>>() {}.getType(), parameterizedClass(List.class, arguments));
+      assertEquals(
+          new TypeToken<List<String>>() {}.getType(), parameterizedClass(List.class, String.class));
+
+      CacheStats stats = TypeFactory.getValidatedTypeCacheStats();
+      assertEquals(2, stats.getHitCount());
+      assertEquals(2, stats.getMissCount());
+      assertEquals(2, stats.getSize());
+    } finally {
+      TypeFactory.setValidatedTypeCacheSize(0);
+    }
+  }
 }
@@ -0,0 +1,99 @@
+package com.coekie.gentyref.factory;
+
+import static com.coekie.gentyref.TypeFactory.arrayOf;
+import static com.coekie.gentyref.TypeFactory.parameterizedClass;
+import static com.coekie.gentyref.TypeFactory.template;
+import static com.coekie.gentyref.TypeFactory.wildcardExtends;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import com.coekie.gentyref.TypeArgumentNotInBoundException;
+import com.coekie.gentyref.TypeTemplate;
+import com.coekie.gentyref.TypeToken;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class TypeTemplateTest {
+  private static final TypeVariable<?> E = List.class.getTypeParameters()[0];
+  private static final TypeVariable<?> K = Map.class.getTypeParameters()[0];
+
+  static class NumberBox<T extends Number> {}
+
+  @Test
+  public void testInstantiate() {
+    TypeTemplate template =
+        template(
+            parameterizedClass(Map.class, String.class, parameterizedClass(List.class, E)), E);
+    assertEquals(
+        new TypeToken<Map<String, List<Integer>>>() {}.getType(),
+        template.instantiate(Integer.class));
+    assertEquals(
+        new TypeToken<Map<String, List<String>>>() {}.getType(),
+        template.instantiate(String.class));
+  }
+
+  @Test
+  public void testMultipleSlots() {
+    TypeTemplate template =
+        template(
+            parameterizedClass(Map.class, K, wildcardExtends(parameterizedClass(List.class, E))),
+            E,
+            K);
+    assertEquals(
+        new TypeToken<Map<String, ? extends List<Integer>>>() {}.getType(),
+        template.instantiate(Integer.class, String.class));
+  }
+
+  @Test
+  public void testGenericArray() {
+    TypeTemplate template = template(new TypeToken<List<String>[]>() {}.getType());
+    assertEquals(new TypeToken<List<String>[]>() {}.getType(), template.instantiate());
+
+    template = template(arrayOf(parameterizedClass(List.class, E)), E);
+    assertEquals(new TypeToken<List<String>[]>() {}.getType(), template.instantiate(String.class));
+  }
+
+  /** The parts of the shape that don't contain a slot are shared */
+  @Test
+  public void testConstantPartsShared() {
+    Type listOfString = new TypeToken<List<String>>() {}.getType();
+    TypeTemplate template = template(parameterizedClass(Map.class, listOfString, E), E);
+    ParameterizedType instance = (ParameterizedType) template.instantiate(Integer.class);
+    assertSame(listOfString, instance.getActualTypeArguments()[0]);
+  }
+
+  @Test
+  public void testSlotOutOfBounds() {
+    TypeVariable<?> t = NumberBox.class.getTypeParameters()[0];
+    TypeTemplate template =
+        template(parameterizedClass(List.class, parameterizedClass(NumberBox.class, t)), t);
+    assertEquals(
+        new TypeToken<List<NumberBox<Integer>>>() {}.getType(),
+        template.instantiate(Integer.class));
+    try {
+      template.instantiate(String.class);
+      fail("expected exception");
+    } catch (TypeArgumentNotInBoundException e) { // expected
+    }
+  }
+
+  @Test
+  public void testWrongNumberOfArguments() {
+    TypeTemplate template = template(parameterizedClass(List.class, E), E);
+    try {
+      template.instantiate(String.class, String.class);
+      fail("expected exception");
+    } catch (IllegalArgumentException e) { // expected
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testDuplicateSlot() {
+    template(parameterizedClass(List.class, E), E, E);
+  }
+}